@@ -0,0 +1,12 @@
+#! /bin/bash
+DBNAME=$1
+PORT=$2
+USER=$3
+BENCH=$4
+shift 4
+
+# Example: ./bench.sh flightDB 5432 user StatementCacheBench 10000
+rm -rf bench-bin
+mkdir -p bench-bin
+javac -cp "lib/postgresql-42.1.4.jar" src/*.java bench/*.java -d bench-bin/
+java -cp lib/*:bench-bin/ $BENCH $DBNAME $PORT $USER "$@"
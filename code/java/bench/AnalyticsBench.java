@@ -0,0 +1,105 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class compares reports 6-10 run by the database with the same
+ * reports run by ReportSnapshot over a snapshot of that database.  For
+ * each report it prints the mean time of both and whether their CSV output
+ * matches.  Rows are compared as a sorted list, since the SQL of 6, 7 and 8
+ * has no ORDER BY and 9 and 10 leave ties in any order; for 9 the cars tied
+ * at the k-th count may differ, so only their counts are compared.
+ *
+ * With --dir the snapshot is also loaded from CSV files and its load time
+ * printed; those reports are only checked when the database holds exactly
+ * those files.
+ *
+ * Usage: java AnalyticsBench &lt;dbname&gt; &lt;port&gt; &lt;user&gt; [--iterations n]
+ *        [--k n] [--threads n] [--dir csv dir]
+ */
+
+public class AnalyticsBench{
+
+	public static void main (String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println ("Usage: java AnalyticsBench <dbname> <port> <user> [--iterations n] [--k n] [--threads n] [--dir csv dir]");
+			return;
+		}//end if
+		int iterations = 10, k = 10, threads = Runtime.getRuntime().availableProcessors();
+		String dir = null;
+		for (int i = 3; i < args.length; ++i){
+			switch (args[i]){
+				case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+				case "--k": k = Integer.parseInt(args[++i]); break;
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				case "--dir": dir = args[++i]; break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}//end for
+
+		Class.forName("org.postgresql.Driver");
+		MechanicShop esql = new MechanicShop (args[0], args[1], args[2], "");
+		List<ReportSnapshot> snapshots = new ArrayList<ReportSnapshot>();
+		try{
+			snapshots.add(ReportSnapshot.fromDatabase(esql, threads));
+			if (dir != null) snapshots.add(ReportSnapshot.fromCsv(new File(dir), threads));
+			System.out.printf("%-48s %10s %10s %8s  %s%n", "report", "SQL ms", "memory ms", "speedup", "output");
+			for (Report report : Report.values()){
+				Object[] params = report.getParameterCount() == 0 ? new Object[0] : new Object[]{ k };
+				StringWriter sql = new StringWriter();
+				long sqlNanos = 0;
+				for (int i = 0; i < iterations; ++i){
+					sql.getBuffer().setLength(0);
+					long start = System.nanoTime();
+					esql.runReport(report, new ResultRenderer(ResultRenderer.Format.CSV, sql), params);
+					sqlNanos += System.nanoTime() - start;
+				}//end for
+				for (int s = 0; s < snapshots.size(); ++s){
+					StringWriter memory = new StringWriter();
+					long memoryNanos = 0;
+					for (int i = 0; i < iterations; ++i){
+						memory.getBuffer().setLength(0);
+						long start = System.nanoTime();
+						snapshots.get(s).runReport(report, new ResultRenderer(ResultRenderer.Format.CSV, memory), params);
+						memoryNanos += System.nanoTime() - start;
+					}//end for
+					System.out.printf("%-48s %10.3f %10.3f %7.1fx  %s%n", report.option + ". " + report.title + (s == 0 ? "" : " (csv)"),
+						sqlNanos / 1e6 / iterations, memoryNanos / 1e6 / iterations, (double) sqlNanos / memoryNanos,
+						same(report, sql.toString(), memory.toString()) ? "same" : "DIFFERENT");
+				}//end for
+			}//end for
+		}finally{
+			for (ReportSnapshot snapshot : snapshots) snapshot.close();
+			esql.cleanup();
+		}
+	}
+
+	private static boolean same (Report report, String sql, String memory){
+		String[] a = sql.split("\n"), b = memory.split("\n");
+		if (a.length != b.length) return false;
+		if (report == Report.K_MOST_SERVICED_CARS){
+			// the last CSV column is the count
+			for (int i = 0; i < a.length; ++i)
+				if (!a[i].substring(a[i].lastIndexOf(',') + 1).equals(b[i].substring(b[i].lastIndexOf(',') + 1))) return false;
+			return true;
+		}//end if
+		Arrays.sort(a);
+		Arrays.sort(b);
+		return Arrays.equals(a, b);
+	}
+}
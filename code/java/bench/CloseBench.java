@@ -0,0 +1,147 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class measures closing service requests with the closed_request.csv
+ * workload (30000 requests at scale 1).  Closed_Request is saved to
+ * Bench_Closed_Saved and emptied, then the same requests are closed by:
+ *
+ * <ul>
+ * <li>closeServiceRequest, one request per round trip (the first --single
+ * requests only)</li>
+ * <li>INSERT_CLOSED_REQUEST as JDBC batches in transactions, as batch mode
+ * does (no checks besides the constraints)</li>
+ * <li>closeServiceRequests, for every chunk size in --chunks</li>
+ * </ul>
+ *
+ * Closed_Request is emptied before each run and restored from the saved copy
+ * at the end.
+ *
+ * Usage: java CloseBench &lt;dbname&gt; &lt;port&gt; &lt;user&gt; [--file closed_request.csv]
+ *        [--single n] [--chunks 100,500,2000]
+ */
+
+public class CloseBench{
+
+	private final MechanicShop _esql;
+	private final List<Object[]> _requests;
+
+	public CloseBench (MechanicShop esql, List<Object[]> requests){
+		this._esql = esql;
+		this._requests = requests;
+	}
+
+	public static void main (String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println ("Usage: java CloseBench <dbname> <port> <user> [--file closed_request.csv] [--single n] [--chunks 100,500,2000]");
+			return;
+		}//end if
+		String file = "../data/closed_request.csv";
+		int single = 5000;
+		String chunks = "100,500,2000";
+		for (int i = 3; i < args.length; ++i){
+			switch (args[i]){
+				case "--file": file = args[++i]; break;
+				case "--single": single = Integer.parseInt(args[++i]); break;
+				case "--chunks": chunks = args[++i]; break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}//end for
+
+		List<Object[]> requests = new ArrayList<Object[]>();
+		try (BufferedReader lines = new BufferedReader(new FileReader(file))){
+			String line;
+			while ((line = lines.readLine()) != null)
+				if (!line.trim().isEmpty()) requests.add(BulkCloser.parse(line.trim()));
+		}
+		System.out.println("== " + requests.size() + " requests from " + file);
+
+		Class.forName("org.postgresql.Driver");
+		MechanicShop esql = new MechanicShop (args[0], args[1], args[2], "");
+		try{
+			new CloseBench(esql, requests).run(Math.min(single, requests.size()), chunks.split(","));
+		}finally{
+			esql.cleanup();
+		}
+	}
+
+	public void run (int single, String[] chunks) throws Exception {
+		if (this._esql.executeQueryForLong(0, "SELECT COUNT(*) FROM pg_class WHERE relname = 'bench_closed_saved'") > 0)
+			throw new SQLException("Bench_Closed_Saved exists; restore Closed_Request from it before running again");
+		this._esql.executeUpdate("CREATE TABLE Bench_Closed_Saved AS SELECT * FROM Closed_Request");
+		System.out.printf("%-36s %7s %7s %10s %12s%n", "close", "n", "closed", "ms", "requests/s");
+		try{
+			this._esql.executeUpdate("DELETE FROM Closed_Request");
+			long start = System.nanoTime();
+			int closed = 0;
+			for (int i = 0; i < single; ++i){
+				Object[] r = this._requests.get(i);
+				try{
+					MechanicShop.closeServiceRequest(this._esql, (Integer) r[0], (Integer) r[1], (java.sql.Date) r[2], (String) r[3], (Integer) r[4]);
+					++closed;
+				}catch (SQLException e){
+					// counted as not closed
+				}//end try
+			}//end for
+			print("closeServiceRequest", single, closed, System.nanoTime() - start);
+
+			for (String chunk : chunks){
+				int size = Integer.parseInt(chunk.trim());
+				this._esql.executeUpdate("DELETE FROM Closed_Request");
+				start = System.nanoTime();
+				closed = 0;
+				for (int from = 0; from < this._requests.size(); from += size){
+					List<Object[]> rows = new ArrayList<Object[]>(size);
+					for (Object[] r : this._requests.subList(from, Math.min(this._requests.size(), from + size)))
+						rows.add(new Object[]{ this._esql.getNextSeqVal(IdGenerator.CLOSED_REQUEST_WID), r[0], r[1], r[2], r[3], r[4] });
+					this._esql.beginTransaction();
+					try{
+						this._esql.executeBatch(MechanicShop.INSERT_CLOSED_REQUEST, rows);
+						this._esql.commit();
+						closed += rows.size();
+					}catch (SQLException e){
+						this._esql.rollback();
+					}//end try
+				}//end for
+				print("JDBC batch of " + size + " (unchecked)", this._requests.size(), closed, System.nanoTime() - start);
+
+				this._esql.executeUpdate("DELETE FROM Closed_Request");
+				start = System.nanoTime();
+				List<String> rejected = new ArrayList<String>();
+				closed = MechanicShop.closeServiceRequests(this._esql, this._requests, size, rejected);
+				print("closeServiceRequests, chunks of " + size, this._requests.size(), closed, System.nanoTime() - start);
+			}//end for
+		}finally{
+			restore();
+		}
+	}
+
+	/*
+	 * puts back the rows Closed_Request had before the run
+	 */
+	private void restore () throws SQLException {
+		this._esql.executeUpdate("DELETE FROM Closed_Request");
+		this._esql.executeUpdate("INSERT INTO Closed_Request SELECT * FROM Bench_Closed_Saved");
+		this._esql.executeUpdate("DROP TABLE Bench_Closed_Saved");
+	}
+
+	private static void print (String label, int n, int closed, long nanos){
+		System.out.printf("%-36s %7d %7d %10.1f %12.0f%n", label, n, closed, nanos / 1e6, closed / (nanos / 1e9));
+	}
+}
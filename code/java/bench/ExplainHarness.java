@@ -0,0 +1,251 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class captures EXPLAIN (ANALYZE, BUFFERS) of every statement
+ * MechanicShop runs (the lookups, intake, closing and the reports with
+ * their pages and counts) with sample parameters taken from the data.  Each
+ * statement runs in a transaction that is rolled back, so writes leave no
+ * trace.  The plans are written to the output directory, one file per
+ * statement, and a line per statement gives its time, buffers and the
+ * tables it scanned sequentially.
+ *
+ * A sequential scan of a table with at least --min-rows rows fails the
+ * run (exit status 1), unless the statement reads that table in full by
+ * design: reports 7 and 10 aggregate over every customer, 6 and 8 join a
+ * large share of the customers and cars.  With --compare the times are
+ * shown next to those of an earlier run, e.g. one made before an index
+ * change.
+ *
+ * Usage: java ExplainHarness &lt;dbname&gt; &lt;port&gt; &lt;user&gt; --out dir
+ *        [--compare dir] [--min-rows n]
+ */
+
+public class ExplainHarness{
+
+	private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+	private static final Pattern EXECUTION_TIME = Pattern.compile("Execution [Tt]ime: ([0-9.]+) ms");
+	private static final Pattern BUFFERS = Pattern.compile("Buffers: shared(?: hit=(\\d+))?(?: read=(\\d+))?");
+
+	/*
+	 * one statement and its sample parameters
+	 */
+	private static class Statement{
+		private final String _label;
+		private final String _sql;
+		private final Object[] _params;
+		//tables the statement reads in full by design
+		private final Set<String> _fullScans;
+
+		Statement(String label, String sql, Object[] params, String... fullScans){
+			this._label = label;
+			this._sql = sql;
+			this._params = params;
+			this._fullScans = new HashSet<String>(Arrays.asList(fullScans));
+		}
+	}
+
+	private final MechanicShop _esql;
+	private final File _out;
+	private final File _compare;
+	private final long _minRows;
+
+	public ExplainHarness (MechanicShop esql, File out, File compare, long minRows){
+		this._esql = esql;
+		this._out = out;
+		this._compare = compare;
+		this._minRows = minRows;
+	}
+
+	public static void main (String[] args) throws Exception {
+		String out = null, compare = null;
+		long minRows = 10000;
+		for (int i = 3; i < args.length; ++i){
+			switch (args[i]){
+				case "--out": out = args[++i]; break;
+				case "--compare": compare = args[++i]; break;
+				case "--min-rows": minRows = Long.parseLong(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}//end for
+		if (args.length < 3 || out == null) {
+			System.err.println ("Usage: java ExplainHarness <dbname> <port> <user> --out dir [--compare dir] [--min-rows n]");
+			return;
+		}//end if
+
+		Class.forName("org.postgresql.Driver");
+		MechanicShop esql = new MechanicShop (args[0], args[1], args[2], "");
+		int failures;
+		try{
+			failures = new ExplainHarness(esql, new File(out), compare == null ? null : new File(compare), minRows).run();
+		}finally{
+			esql.cleanup();
+		}
+		if (failures > 0){
+			System.out.println(failures + " statement(s) scan a large table sequentially");
+			System.exit(1);
+		}//end if
+	}
+
+	public int run () throws SQLException, IOException {
+		if (!this._out.isDirectory() && !this._out.mkdirs())
+			throw new IOException("Unable to create " + this._out);
+		final Map<String, Long> rows = new LinkedHashMap<String, Long>();
+		this._esql.executeQueryForEach(row -> rows.put(row.getString(1), row.getLong(2)),
+			"SELECT relname, reltuples::bigint FROM pg_class WHERE relkind = 'r' AND relnamespace = 'public'::regnamespace");
+
+		int failures = 0;
+		System.out.printf("%-36s %10s %10s %10s %9s  %s%n", "statement", "ms", "before ms", "hit", "read", "seq scans");
+		for (Statement s : statements()){
+			List<String> plan = explain(s);
+			Files.write(new File(this._out, s._label + ".plan").toPath(), plan, StandardCharsets.UTF_8);
+
+			double ms = executionTime(plan);
+			double before = -1;
+			File earlier = this._compare == null ? null : new File(this._compare, s._label + ".plan");
+			if (earlier != null && earlier.isFile())
+				before = executionTime(Files.readAllLines(earlier.toPath(), StandardCharsets.UTF_8));
+			long hit = 0, read = 0;
+			for (String line : plan){
+				Matcher m = BUFFERS.matcher(line);
+				if (m.find()){
+					// the first Buffers line is the top node, the total of the plan
+					if (m.group(1) != null) hit = Long.parseLong(m.group(1));
+					if (m.group(2) != null) read = Long.parseLong(m.group(2));
+					break;
+				}//end if
+			}//end for
+
+			StringBuilder scans = new StringBuilder();
+			for (String line : plan){
+				Matcher m = SEQ_SCAN.matcher(line);
+				if (!m.find()) continue;
+				String table = m.group(1).toLowerCase();
+				long tableRows = rows.getOrDefault(table, 0L);
+				boolean bad = tableRows >= this._minRows && !s._fullScans.contains(table);
+				if (bad) ++failures;
+				scans.append(scans.length() == 0 ? "" : ", ").append(table).append(" (").append(tableRows).append(bad ? " rows) FAIL" : " rows)");
+			}//end for
+			System.out.printf("%-36s %10.3f %10s %10d %9d  %s%n", s._label, ms, before < 0 ? "-" : String.format("%.3f", before),
+				hit, read, scans);
+		}//end for
+		return failures;
+	}
+
+	/*
+	 * runs EXPLAIN (ANALYZE, BUFFERS) of the statement in a transaction that
+	 * is rolled back
+	 */
+	private List<String> explain (Statement s) throws SQLException {
+		final List<String> plan = new ArrayList<String>();
+		this._esql.beginTransaction();
+		try{
+			this._esql.executeQueryForEach(row -> plan.add(row.getString(1)), "EXPLAIN (ANALYZE, BUFFERS) " + s._sql, s._params);
+		}finally{
+			this._esql.rollback();
+		}
+		return plan;
+	}
+
+	private static double executionTime (List<String> plan){
+		for (String line : plan){
+			Matcher m = EXECUTION_TIME.matcher(line);
+			if (m.find()) return Double.parseDouble(m.group(1));
+		}//end for
+		return -1;
+	}
+
+	/*
+	 * every statement of MechanicShop, with parameters read from the data
+	 */
+	private List<Statement> statements () throws SQLException {
+		final Object[] owner = new Object[2];
+		this._esql.executeQueryForEach(row -> {
+			owner[0] = row.getInt(1);
+			owner[1] = row.getString(2);
+		}, "SELECT customer_id, car_vin FROM Owns ORDER BY ownership_id LIMIT 1");
+		final Object[] sample = new Object[5];
+		this._esql.executeQueryForEach(row -> {
+			for (int i = 0; i < sample.length; ++i) sample[i] = row.getObject(i + 1);
+		}, "SELECT (SELECT lname FROM Customer ORDER BY id LIMIT 1), (SELECT id FROM Mechanic ORDER BY id LIMIT 1), "
+			+ "(SELECT COALESCE(MAX(rid), 0) + 1 FROM Service_Request), (SELECT COALESCE(MAX(wid), 0) + 1 FROM Closed_Request), "
+			+ "(SELECT COALESCE(MAX(ownership_id), 0) + 1 FROM Owns)");
+		final int[] open = { -1 };
+		this._esql.executeQueryForEach(row -> open[0] = row.getInt(1),
+			"SELECT rid FROM Service_Request AS SR WHERE NOT EXISTS (SELECT 1 FROM Closed_Request AS C WHERE C.rid = SR.rid) ORDER BY rid LIMIT 1");
+		if (owner[1] == null) throw new SQLException("The harness needs at least one row in Owns");
+
+		int customer = (Integer) owner[0];
+		String vin = (String) owner[1];
+		int mechanic = sample[1] == null ? 0 : (Integer) sample[1];
+		int newRid = ((Number) sample[2]).intValue(), newWid = ((Number) sample[3]).intValue(), newOwnership = ((Number) sample[4]).intValue();
+		int rid = open[0] >= 0 ? open[0] : newRid - 1;
+		// the first letters of a last name, as typed at the front desk
+		String prefix = sample[0] == null ? "abc" : sample[0].toString().trim().toLowerCase();
+		prefix = prefix.substring(0, Math.min(4, prefix.length()));
+		java.sql.Date today = new java.sql.Date(System.currentTimeMillis());
+
+		List<Statement> list = new ArrayList<Statement>();
+		list.add(new Statement("find_customers_by_last_name", MechanicShop.FIND_CUSTOMERS_BY_LAST_NAME, new Object[]{ sample[0] }));
+		list.add(new Statement("search_customers", MechanicShop.SEARCH_CUSTOMERS,
+			new Object[]{ "%" + prefix + "%", prefix, "%473%", prefix + "%", "% " + prefix + "%", prefix, "%473%", 20 }));
+		list.add(new Statement("find_cars_of_customer", MechanicShop.FIND_CARS_OF_CUSTOMER, new Object[]{ customer }));
+		list.add(new Statement("intake_owned_car", MechanicShop.INTAKE_OWNED_CAR, new Object[]{ newRid, 1000, "explain", customer, vin }));
+		list.add(new Statement("intake_new_car", MechanicShop.INTAKE_NEW_CAR,
+			new Object[]{ "EXPLAIN000000000", "Explain", "Model", 2000, newOwnership, customer, newRid, 1000, "explain" }));
+		list.add(new Statement("intake_queued_request", IntakeQueue.INSERT_QUEUED_REQUEST,
+			new Object[]{ newRid, today, 1000, "explain", customer, vin }));
+		list.add(new Statement("close_request", MechanicShop.CLOSE_REQUEST, new Object[]{ newWid, today, "explain", 100, rid, mechanic, today }));
+		list.add(new Statement("close_requests", MechanicShop.CLOSE_REQUESTS,
+			new Object[]{ "{" + newWid + "}", "{" + rid + "}", "{" + mechanic + "}", "{" + today + "}", "{explain}", "{100}" }));
+		list.add(new Statement("close_request_diagnosis", MechanicShop.CLOSE_REQUEST_DIAGNOSIS, new Object[]{ rid, mechanic, rid }));
+
+		for (Report report : Report.values()){
+			String label = "report" + report.option;
+			String[] full;
+			switch (report){
+				case MORE_THAN_20_CARS: full = new String[]{ "owns", "customer" }; break;
+				case BILL_LESS_THAN_100: case TOTAL_BILL_DESCENDING: full = new String[]{ "customer" }; break;
+				case CARS_BEFORE_1995: full = new String[]{ "car" }; break;
+				default: full = new String[0]; break;
+			}
+			list.add(new Statement(label, report.sql, report.getParameterCount() == 0 ? new Object[0] : new Object[]{ 10 }, full));
+			if (!report.isPageable()) continue;
+			list.add(new Statement(label + "_count", report.getCountSql(), new Object[0], full));
+			list.add(new Statement(label + "_first_page", report.getPageSql(true), new Object[]{ 50 }, full));
+			ColumnarResult page = this._esql.executeQueryAndReturnColumns(report.getPageSql(true), 50);
+			if (page.getRowCount() == 0) continue;
+			Object[] params = new Object[report.keyCount + 1];
+			for (int i = 0; i < report.keyCount; ++i)
+				params[i] = page.getObject(page.getRowCount() - 1, page.getColumnCount() - report.keyCount + 1 + i);
+			params[report.keyCount] = 50;
+			list.add(new Statement(label + "_next_page", report.getPageSql(false), params, full));
+		}//end for
+		return list;
+	}
+}
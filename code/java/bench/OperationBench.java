@@ -0,0 +1,209 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class measures every menu operation through the programmatic entry
+ * points of MechanicShop (no prompts): AddCustomer, AddMechanic, AddCar,
+ * InsertServiceRequest and CloseServiceRequest, then reports 6-10 with
+ * their output discarded.  For each operation it prints throughput and
+ * latency percentiles.  Rows written by the run are deleted at the end.
+ *
+ * With --reload the database is regenerated with DataGenerator and bulk
+ * loaded for each scale in --scales before measuring; this TRUNCATES every
+ * table.  Without it the data already in the database is used.
+ *
+ * Usage: java OperationBench &lt;dbname&gt; &lt;port&gt; &lt;user&gt; [--iterations n]
+ *        [--report-iterations n] [--warmup n] [--k n] [--scales 1,10 --reload]
+ */
+
+public class OperationBench{
+
+	private interface Operation{
+		void run (int i) throws Exception;
+	}
+
+	//VINs of the cars added by the new car intake start here
+	private static final int NEW_CAR_VINS = 1000000000;
+
+	private final MechanicShop _esql;
+	private final int _iterations;
+	private final int _reportIterations;
+	private final int _warmup;
+	private final int _k;
+
+	//state shared by the write operations
+	private int _firstCustomer;
+	private int _firstMechanic;
+	private int _firstRid = -1;
+	private final List<Integer> _rids = new ArrayList<Integer>();
+	private int[] _ownerIds;
+	private String[] _ownedVins;
+	private int[] _mechanicIds;
+
+	public OperationBench (MechanicShop esql, int iterations, int reportIterations, int warmup, int k){
+		this._esql = esql;
+		this._iterations = iterations;
+		this._reportIterations = reportIterations;
+		this._warmup = warmup;
+		this._k = k;
+	}
+
+	public static void main (String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println ("Usage: java OperationBench <dbname> <port> <user> [--iterations n] [--report-iterations n] [--warmup n] [--k n] [--scales 1,10 --reload]");
+			return;
+		}//end if
+		int iterations = 1000, reportIterations = 20, warmup = 100, k = 10;
+		String scales = "1";
+		boolean reload = false;
+		for (int i = 3; i < args.length; ++i){
+			switch (args[i]){
+				case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+				case "--report-iterations": reportIterations = Integer.parseInt(args[++i]); break;
+				case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+				case "--k": k = Integer.parseInt(args[++i]); break;
+				case "--scales": scales = args[++i]; break;
+				case "--reload": reload = true; break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}//end for
+
+		Class.forName("org.postgresql.Driver");
+		MechanicShop esql = new MechanicShop (args[0], args[1], args[2], "");
+		try{
+			if (!reload){
+				System.out.println("== current data");
+				new OperationBench(esql, iterations, reportIterations, warmup, k).run();
+				return;
+			}//end if
+			for (String scale : scales.split(",")){
+				File dir = Files.createTempDirectory("mechanicshop-" + scale.trim() + "x").toFile();
+				System.out.println("== scale " + scale.trim() + " (" + dir + ")");
+				new DataGenerator(dir, Double.parseDouble(scale.trim()), 166L).generate();
+				new BulkLoader(esql, dir, 3).load(true);
+				esql.executeUpdate("ANALYZE");
+				new OperationBench(esql, iterations, reportIterations, warmup, k).run();
+				for (File f : dir.listFiles()) f.delete();
+				dir.delete();
+			}//end for
+		}finally{
+			esql.cleanup();
+		}
+	}
+
+	public void run () throws Exception {
+		setUp();
+		Writer discard = Writer.nullWriter();
+		System.out.printf("%-48s %7s %10s %9s %9s %9s %9s %9s%n",
+			"operation", "n", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+		try{
+			measure("AddCustomer", this._iterations, i -> MechanicShop.addCustomer(this._esql,
+				this._firstCustomer + i, "Bench", "Customer" + i, "(951)827-0000", i + " University Ave"));
+			measure("AddMechanic", this._iterations, i -> MechanicShop.addMechanic(this._esql,
+				this._firstMechanic + i, "Bench", "Mechanic" + i, i % 50));
+			measure("AddCar", this._iterations, i -> MechanicShop.addCar(this._esql, vin(i), "Bench", "Model", 1990 + i % 29));
+			measure("InsertServiceRequest", this._iterations, i -> {
+				int pick = i % this._ownerIds.length;
+				int rid = MechanicShop.insertServiceRequest(this._esql, this._ownerIds[pick], this._ownedVins[pick], 1 + i, "Bench complaint");
+				if (this._firstRid < 0) this._firstRid = rid;
+				this._rids.add(rid);
+			});
+			measure("InsertServiceRequest (new car)", this._iterations, i -> {
+				int pick = i % this._ownerIds.length;
+				int rid = MechanicShop.insertServiceRequestForNewCar(this._esql, this._ownerIds[pick], vin(NEW_CAR_VINS + i),
+					"Bench", "Model", 1990 + i % 29, 1 + i, "Bench complaint");
+				if (this._firstRid < 0) this._firstRid = rid;
+			});
+			measure("CloseServiceRequest", this._iterations, i -> MechanicShop.closeServiceRequest(this._esql,
+				this._rids.get(i), this._mechanicIds[i % this._mechanicIds.length],
+				new java.sql.Date(System.currentTimeMillis()), "Bench", 50 + i % 950));
+			for (Report report : Report.values()){
+				Object[] params = report.getParameterCount() == 0 ? new Object[0] : new Object[]{ this._k };
+				measure(report.option + ". " + report.title, this._reportIterations,
+					i -> this._esql.runReport(report, new ResultRenderer(ResultRenderer.Format.TSV, discard), params));
+			}//end for
+		}finally{
+			tearDown();
+		}
+	}
+
+	private void setUp () throws SQLException {
+		this._firstCustomer = (int) this._esql.executeQueryForLong(-1, "SELECT MAX(id) FROM Customer") + 1;
+		this._firstMechanic = (int) this._esql.executeQueryForLong(-1, "SELECT MAX(id) FROM Mechanic") + 1;
+
+		final List<Integer> owners = new ArrayList<Integer>();
+		final List<String> vins = new ArrayList<String>();
+		this._esql.executeQueryForEach(row -> {
+			owners.add(row.getInt(1));
+			vins.add(row.getString(2));
+		}, "SELECT customer_id, car_vin FROM Owns ORDER BY ownership_id LIMIT 10000");
+		if (owners.isEmpty()) throw new SQLException("The benchmark needs at least one row in Owns");
+		this._ownerIds = owners.stream().mapToInt(Integer::intValue).toArray();
+		this._ownedVins = vins.toArray(new String[0]);
+
+		final List<Integer> mechanics = new ArrayList<Integer>();
+		this._esql.executeQueryForEach(row -> mechanics.add(row.getInt(1)), "SELECT id FROM Mechanic ORDER BY id LIMIT 10000");
+		if (mechanics.isEmpty()) throw new SQLException("The benchmark needs at least one row in Mechanic");
+		this._mechanicIds = mechanics.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/*
+	 * deletes the rows written by the run, children first
+	 */
+	private void tearDown () throws SQLException {
+		if (this._firstRid >= 0){
+			this._esql.executeUpdate("DELETE FROM Closed_Request WHERE rid >= ?", this._firstRid);
+			this._esql.executeUpdate("DELETE FROM Service_Request WHERE rid >= ?", this._firstRid);
+		}//end if
+		this._esql.executeUpdate("DELETE FROM Owns WHERE car_vin LIKE 'BENCH%'");
+		this._esql.executeUpdate("DELETE FROM Car WHERE vin LIKE 'BENCH%'");
+		this._esql.executeUpdate("DELETE FROM Customer WHERE id >= ?", this._firstCustomer);
+		this._esql.executeUpdate("DELETE FROM Mechanic WHERE id >= ?", this._firstMechanic);
+	}
+
+	private static String vin (int i){
+		return String.format("BENCH%011d", i);
+	}
+
+	/*
+	 * runs warmup + n calls; only the last n are timed
+	 */
+	private void measure (String label, int n, Operation op) throws Exception {
+		int warmup = Math.min(this._warmup, n);
+		for (int i = 0; i < warmup; ++i) op.run(i);
+		long[] nanos = new long[n];
+		long start = System.nanoTime();
+		for (int i = 0; i < n; ++i){
+			long t = System.nanoTime();
+			op.run(warmup + i);
+			nanos[i] = System.nanoTime() - t;
+		}//end for
+		long total = System.nanoTime() - start;
+		Arrays.sort(nanos);
+		System.out.printf("%-48s %7d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n", label, n, n / (total / 1e9),
+			percentile(nanos, 0.50), percentile(nanos, 0.90), percentile(nanos, 0.99), percentile(nanos, 0.999), nanos[n - 1] / 1e6);
+	}
+
+	private static double percentile (long[] sorted, double p){
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+	}
+}
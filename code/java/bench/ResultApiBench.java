@@ -0,0 +1,90 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * This class compares time and bytes allocated per row when reading
+ * Service_Request and Closed_Request through executeQueryAndReturnResult
+ * (a list of strings per row), executeQueryForEach with typed getters and
+ * executeQueryAndReturnColumns.
+ *
+ * Usage: java ResultApiBench <dbname> <port> <user> [rounds]
+ */
+
+public class ResultApiBench{
+	private static final com.sun.management.ThreadMXBean THREADS =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	//the first two columns of each query are integers
+	private static final String[] QUERIES = {
+		"SELECT rid, odometer, customer_id, car_vin, date, complain FROM Service_Request",
+		"SELECT wid, bill, rid, mid, date, comment FROM Closed_Request"
+	};
+
+	//keeps the JIT from discarding the reads
+	private static long sink = 0;
+
+	public static void main (String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println ("Usage: java ResultApiBench <dbname> <port> <user> [rounds]");
+			return;
+		}//end if
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		Class.forName("org.postgresql.Driver");
+		MechanicShop esql = new MechanicShop (args[0], args[1], args[2], "");
+		try{
+			for (String query : QUERIES){
+				System.out.println(query);
+				for (int round = 0; round <= rounds; ++round){
+					// round 0 warms up and is not reported
+					boolean report = round > 0;
+					measure("list of strings", report, () -> {
+						List<List<String>> result = esql.executeQueryAndReturnResult(query);
+						for (List<String> row : result) sink += Long.parseLong(row.get(0)) + Long.parseLong(row.get(1));
+						return result.size();
+					});
+					measure("row callback", report, () -> esql.executeQueryForEach(row -> {
+						sink += row.getLong(1) + row.getLong(2);
+					}, query));
+					measure("columnar", report, () -> {
+						ColumnarResult result = esql.executeQueryAndReturnColumns(query);
+						int[] ids = result.getIntColumn(1);
+						int[] values = result.getIntColumn(2);
+						for (int i = 0; i < ids.length; ++i) sink += ids[i] + values[i];
+						return result.getRowCount();
+					});
+				}//end for
+			}//end for
+			System.out.println("checksum " + sink);
+		}finally{
+			esql.cleanup();
+		}
+	}
+
+	private interface Reader{
+		int read () throws Exception;
+	}
+
+	private static void measure (String label, boolean report, Reader reader) throws Exception {
+		long thread = Thread.currentThread().getId();
+		long bytes = THREADS.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		int rows = reader.read();
+		long nanos = System.nanoTime() - start;
+		bytes = THREADS.getThreadAllocatedBytes(thread) - bytes;
+		if (report)
+			System.out.printf("  %-16s %7d rows %8.1f ms %8.0f bytes/row%n", label, rows, nanos / 1e6, (double) bytes / Math.max(1, rows));
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * This class drives a MechanicShop server (--serve) with many concurrent
+ * clerks.  Each client thread keeps one connection open and loops until the
+ * time is up: it lists the cars of a random customer and, for the given
+ * share of requests, opens a service request for one of them; the other
+ * requests run report 9 (k = 10).  Throughput and latency percentiles are
+ * printed per request kind, along with busy and failed replies.
+ *
+ * The intakes are real inserts into Service_Request.
+ *
+ * Usage: java ServerLoadGenerator &lt;server port&gt; [--clients n] [--seconds s]
+ *        [--customers n] [--write-ratio r] [--seed s]
+ */
+
+public class ServerLoadGenerator{
+
+	/*
+	 * latencies of one request kind, per client thread
+	 */
+	private static class Samples{
+		private long[] _nanos = new long[1024];
+		private int _count = 0;
+		private long _busy = 0;
+		private long _failed = 0;
+
+		void add(long nanos){
+			if (this._count == this._nanos.length) this._nanos = Arrays.copyOf(this._nanos, this._count * 2);
+			this._nanos[this._count++] = nanos;
+		}
+
+		void addAll(Samples other){
+			for (int i = 0; i < other._count; ++i) add(other._nanos[i]);
+			this._busy += other._busy;
+			this._failed += other._failed;
+		}
+	}
+
+	private final int _port;
+	private final int _customers;
+	private final double _writeRatio;
+	private final long _deadline;
+
+	private ServerLoadGenerator(int port, int customers, double writeRatio, long deadline){
+		this._port = port;
+		this._customers = customers;
+		this._writeRatio = writeRatio;
+		this._deadline = deadline;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1){
+			System.err.println("Usage: java ServerLoadGenerator <server port> [--clients n] [--seconds s] [--customers n] [--write-ratio r] [--seed s]");
+			return;
+		}//end if
+		int clients = 32, seconds = 30, customers = 500;
+		double writeRatio = 0.2;
+		long seed = 166;
+		for (int i = 1; i < args.length; ++i){
+			switch (args[i]){
+				case "--clients": clients = Integer.parseInt(args[++i]); break;
+				case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+				case "--customers": customers = Integer.parseInt(args[++i]); break;
+				case "--write-ratio": writeRatio = Double.parseDouble(args[++i]); break;
+				case "--seed": seed = Long.parseLong(args[++i]); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}//end for
+
+		long start = System.nanoTime();
+		ServerLoadGenerator generator = new ServerLoadGenerator(Integer.parseInt(args[0]), customers, writeRatio, start + seconds * 1000000000L);
+		List<Thread> threads = new ArrayList<Thread>();
+		List<TreeMap<String, Samples>> results = new ArrayList<TreeMap<String, Samples>>();
+		for (int c = 0; c < clients; ++c){
+			TreeMap<String, Samples> samples = new TreeMap<String, Samples>();
+			results.add(samples);
+			Random random = new Random(seed + c);
+			Thread t = new Thread(() -> generator.client(random, samples), "clerk-" + c);
+			threads.add(t);
+			t.start();
+		}//end for
+		for (Thread t : threads) t.join();
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		TreeMap<String, Samples> total = new TreeMap<String, Samples>();
+		for (TreeMap<String, Samples> samples : results)
+			for (String kind : samples.keySet())
+				total.computeIfAbsent(kind, k -> new Samples()).addAll(samples.get(kind));
+
+		System.out.printf("%d clients, %.1f s%n", clients, elapsed);
+		System.out.printf("%-10s %9s %10s %9s %9s %9s %9s %7s %7s%n", "request", "ok", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "busy", "failed");
+		for (String kind : total.keySet()){
+			Samples s = total.get(kind);
+			long[] sorted = Arrays.copyOf(s._nanos, s._count);
+			Arrays.sort(sorted);
+			System.out.printf("%-10s %9d %10.1f %9.3f %9.3f %9.3f %9.3f %7d %7d%n", kind, s._count, s._count / elapsed,
+				percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+				sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1e6, s._busy, s._failed);
+		}//end for
+	}
+
+	/*
+	 * one clerk: a connection and a request loop
+	 */
+	private void client(Random random, TreeMap<String, Samples> samples){
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), this._port);
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))){
+			socket.setTcpNoDelay(true);
+			List<String> data = new ArrayList<String>();
+			while (System.nanoTime() < this._deadline){
+				if (random.nextDouble() >= this._writeRatio){
+					request(in, out, "9,10", "report9", samples, data);
+					continue;
+				}//end if
+				int customer = random.nextInt(this._customers);
+				if (!request(in, out, "cars," + customer, "cars", samples, data) || data.isEmpty()) continue;
+				// the vin is the third CSV column, after the quoted composite car
+				String vin = csvField(data.get(random.nextInt(data.size())), 2);
+				request(in, out, "4," + customer + "," + vin + "," + (1 + random.nextInt(200000)) + ",load test", "intake", samples, data);
+			}//end while
+			out.write("quit\n");
+			out.flush();
+		}catch (IOException e){
+			System.err.println(Thread.currentThread().getName() + ": " + e.getMessage());
+		}//end try
+	}
+
+	/*
+	 * sends one request and reads its data lines; false unless it was OK
+	 */
+	private static boolean request(BufferedReader in, Writer out, String line, String kind,
+			TreeMap<String, Samples> samples, List<String> data) throws IOException {
+		Samples s = samples.computeIfAbsent(kind, k -> new Samples());
+		data.clear();
+		long start = System.nanoTime();
+		out.write(line);
+		out.write('\n');
+		out.flush();
+		String reply;
+		while ((reply = in.readLine()) != null && reply.startsWith("= "))
+			data.add(reply.substring(2));
+		long nanos = System.nanoTime() - start;
+		if (reply == null) throw new IOException("server closed the connection");
+		if (reply.startsWith("OK")){
+			s.add(nanos);
+			return true;
+		}//end if
+		if (reply.equals("ERR busy")) ++s._busy;
+		else ++s._failed;
+		return false;
+	}
+
+	/*
+	 * returns field i of an RFC 4180 line
+	 */
+	private static String csvField(String line, int index){
+		StringBuilder field = new StringBuilder();
+		int current = 0;
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); ++i){
+			char c = line.charAt(i);
+			if (quoted){
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"'){
+					field.append('"');
+					++i;
+				}else if (c == '"'){
+					quoted = false;
+				}else{
+					field.append(c);
+				}//end if
+			}else if (c == '"'){
+				quoted = true;
+			}else if (c == ','){
+				if (current == index) return field.toString();
+				++current;
+				field.setLength(0);
+			}else{
+				field.append(c);
+			}//end if
+		}//end for
+		return current == index ? field.toString() : "";
+	}
+
+	private static double percentile(long[] sorted, double p){
+		if (sorted.length == 0) return 0;
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+	}
+}
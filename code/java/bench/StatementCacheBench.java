@@ -0,0 +1,84 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * This class compares the old string-built insert path (createStatement per
+ * call, SQL parsed and planned every time) against the parameterized insert
+ * path of MechanicShop, which reuses a cached server-side prepared statement.
+ *
+ * Usage: java StatementCacheBench <dbname> <port> <user> [rows]
+ */
+
+public class StatementCacheBench{
+
+	public static void main (String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println ("Usage: java StatementCacheBench <dbname> <port> <user> [rows]");
+			return;
+		}//end if
+		int rows = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+		Class.forName("org.postgresql.Driver");
+
+		MechanicShop esql = new MechanicShop (args[0], args[1], args[2], "");
+		Connection plain = DriverManager.getConnection("jdbc:postgresql://localhost:" + args[1] + "/" + args[0], args[2], "");
+		try{
+			esql.executeUpdate("DROP TABLE IF EXISTS Bench_Customer");
+			esql.executeUpdate("CREATE TABLE Bench_Customer (LIKE Customer INCLUDING ALL)");
+
+			// warm up both paths so class loading and connection setup are not timed
+			runOld(plain, 0, 500);
+			runNew(esql, 500, 500);
+			esql.executeUpdate("TRUNCATE Bench_Customer");
+
+			long oldNanos = runOld(plain, 0, rows);
+			esql.executeUpdate("TRUNCATE Bench_Customer");
+			long newNanos = runNew(esql, 0, rows);
+
+			report("createStatement + string SQL", rows, oldNanos);
+			report("cached prepared statement", rows, newNanos);
+			System.out.printf("speedup: %.2fx%n", (double) oldNanos / newNanos);
+		}finally{
+			esql.executeUpdate("DROP TABLE IF EXISTS Bench_Customer");
+			plain.close();
+			esql.cleanup();
+		}
+	}
+
+	private static long runOld (Connection conn, int first, int rows) throws SQLException {
+		long start = System.nanoTime();
+		for (int i = first; i < first + rows; ++i){
+			Statement stmt = conn.createStatement();
+			stmt.executeUpdate("INSERT INTO Bench_Customer VALUES (" + i + ",'First" + i + "' , 'Last" + i + "' , '(951)827-" + String.format("%04d", i % 10000) + "' , '" + i + " University Ave')");
+			stmt.close();
+		}//end for
+		return System.nanoTime() - start;
+	}
+
+	private static long runNew (MechanicShop esql, int first, int rows) throws SQLException {
+		long start = System.nanoTime();
+		for (int i = first; i < first + rows; ++i){
+			esql.executeUpdate("INSERT INTO Bench_Customer VALUES (?, ?, ?, ?, ?)", i, "First" + i, "Last" + i, "(951)827-" + String.format("%04d", i % 10000), i + " University Ave");
+		}//end for
+		return System.nanoTime() - start;
+	}
+
+	private static void report (String label, int rows, long nanos){
+		System.out.printf("%-30s %8d rows %10.1f ms %10.0f rows/s %8.1f us/row%n",
+			label, rows, nanos / 1e6, rows / (nanos / 1e9), nanos / 1e3 / rows);
+	}
+}
@@ -4,4 +4,5 @@ PORT=$2
 USER=$3
 
 # Example: source ./run.sh flightDB 5432 user
-java -cp lib/*:bin/ MechanicShop $DBNAME $PORT $USER
+# Bulk load: ./run.sh flightDB 5432 user --load ../data --truncate
+java -cp lib/*:bin/ MechanicShop $DBNAME $PORT $USER "${@:4}"
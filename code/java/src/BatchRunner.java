@@ -0,0 +1,296 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This class runs menu operations 1-5 from a script instead of the
+ * interactive menu.  Each line holds one command: the operation number (or
+ * its name) followed by its fields, separated by commas.  The last field
+ * takes the rest of the line, so addresses, complaints and comments may
+ * contain commas.  Blank lines and lines starting with '#' are skipped.
+ *
+ * <pre>
+ * 1,&lt;id&gt;,&lt;fname&gt;,&lt;lname&gt;,&lt;phone&gt;,&lt;address&gt;          AddCustomer
+ * 2,&lt;id&gt;,&lt;fname&gt;,&lt;lname&gt;,&lt;experience&gt;                AddMechanic
+ * 3,&lt;vin&gt;,&lt;make&gt;,&lt;model&gt;,&lt;year&gt;                     AddCar
+ * 4,&lt;customer id&gt;,&lt;vin&gt;,&lt;odometer&gt;,&lt;complaint&gt;        InsertServiceRequest
+ * 5,&lt;rid&gt;,&lt;mid&gt;,&lt;date&gt;,&lt;bill&gt;,&lt;comment&gt;              CloseServiceRequest
+ * </pre>
+ *
+ * Commands are grouped into transactions of batchSize rows.  Within a
+ * transaction the rows of each operation are sent as one JDBC batch, in
+ * operation order, so a car or service request may refer to a customer added
+ * in the same transaction.  When a transaction fails it is rolled back and
+ * its rows are replayed one at a time, so only the bad rows are rejected.
+ * As from the menu, a service request for a car the customer does not own
+ * inserts nothing and is rejected.
+ * CloseServiceRequest commands are applied after the others are committed,
+ * through MechanicShop.closeServiceRequests, so they get the same checks as
+ * the menu: a request that is already closed, or a date before the request
+ * was opened, is rejected with its reason.
+ *
+ */
+
+public class BatchRunner{
+
+	/*
+	 * one parsed script line
+	 */
+	private static class Command{
+		private final int _line;
+		private final int _op;
+		private final Object[] _params;
+
+		Command(int line, int op, Object[] params){
+			this._line = line;
+			this._op = op;
+			this._params = params;
+		}
+	}
+
+	private static final String[] NAMES = {
+		null, "AddCustomer", "AddMechanic", "AddCar", "InsertServiceRequest", "CloseServiceRequest"
+	};
+	//CloseServiceRequest goes through closeServiceRequests instead
+	private static final String[] STATEMENTS = {
+		null, MechanicShop.INSERT_CUSTOMER, MechanicShop.INSERT_MECHANIC, MechanicShop.INSERT_CAR,
+		MechanicShop.INSERT_SERVICE_REQUEST
+	};
+	private static final int CLOSE = 5;
+	//why an InsertServiceRequest inserted no row
+	private static final String NOT_OWNED = "customer does not own a car with this VIN";
+	//number of fields after the operation
+	private static final int[] FIELDS = { 0, 5, 4, 4, 4, 5 };
+
+	private final MechanicShop _esql;
+	private final int _batchSize;
+
+	//statistics
+	private long _read = 0;
+	private long _applied = 0;
+	private long _failed = 0;
+	private long _transactions = 0;
+	private long _replays = 0;
+	private final long[] _perOp = new long[NAMES.length];
+
+	public BatchRunner(MechanicShop esql, int batchSize){
+		this._esql = esql;
+		this._batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Method to run every command of the script and print the summary.
+	 *
+	 * @param script the commands, one per line
+	 * @throws java.io.IOException when the script could not be read
+	 */
+	public void run(BufferedReader script) throws IOException {
+		long start = System.nanoTime();
+		List<Command> pending = new ArrayList<Command>(this._batchSize);
+		String text;
+		int lineNo = 0;
+		while ((text = script.readLine()) != null){
+			++lineNo;
+			String line = text.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			++this._read;
+			try{
+				pending.add(parse(lineNo, line));
+			}catch (Exception e){
+				reject(lineNo, "invalid command: " + e.getMessage());
+				continue;
+			}//end try
+			if (pending.size() >= this._batchSize){
+				flush(pending);
+				pending.clear();
+			}//end if
+		}//end while
+		flush(pending);
+
+		long nanos = System.nanoTime() - start;
+		System.out.println("BATCH SUMMARY");
+		System.out.println("-------------");
+		for (int op = 1; op < NAMES.length; ++op)
+			if (this._perOp[op] > 0)
+				System.out.printf("%-22s %10d%n", NAMES[op], this._perOp[op]);
+		System.out.printf("commands read          %10d%n", this._read);
+		System.out.printf("applied / failed       %10d / %d%n", this._applied, this._failed);
+		System.out.printf("transactions (replays) %10d (%d)%n", this._transactions, this._replays);
+		System.out.printf("elapsed                %10.1f ms%n", nanos / 1e6);
+		System.out.printf("throughput             %10.0f commands/s%n", this._applied / (nanos / 1e9));
+	}//end run
+
+	private Command parse(int lineNo, String line) throws SQLException {
+		int comma = line.indexOf(',');
+		String head = (comma < 0 ? line : line.substring(0, comma)).trim();
+		int op = opOf(head);
+		String[] f = splitFields(op, comma < 0 ? null : line.substring(comma + 1));
+
+		Object[] params;
+		switch (op){
+			case 1:
+				params = new Object[]{ Integer.parseInt(f[0]), f[1], f[2], f[3], f[4] };
+				break;
+			case 2:
+				params = new Object[]{ Integer.parseInt(f[0]), f[1], f[2], Integer.parseInt(f[3]) };
+				break;
+			case 3:
+				params = new Object[]{ f[0], f[1], f[2], Integer.parseInt(f[3]) };
+				break;
+			case 4:
+				// the rid first, then in the order of INSERT_SERVICE_REQUEST
+				params = new Object[]{ this._esql.getNextSeqVal(IdGenerator.SERVICE_REQUEST_RID),
+					Integer.parseInt(f[2]), f[3], Integer.parseInt(f[0]), f[1] };
+				break;
+			default:
+				// the arguments of closeServiceRequests
+				params = new Object[]{ Integer.parseInt(f[0]), Integer.parseInt(f[1]),
+					java.sql.Date.valueOf(BulkLoader.normalizeDate(f[2])), f[4], Integer.parseInt(f[3]) };
+				break;
+		}
+		return new Command(lineNo, op, params);
+	}
+
+	/**
+	 * Method to find the operation named by the first field of a line.
+	 *
+	 * @param head the operation number (1-5) or name
+	 * @return the operation number
+	 * @throws IllegalArgumentException when no operation matches
+	 */
+	static int opOf(String head){
+		for (int op = 1; op < NAMES.length; ++op)
+			if (head.equals(Integer.toString(op)) || head.equalsIgnoreCase(NAMES[op])) return op;
+		throw new IllegalArgumentException("unknown operation '" + head + "'");
+	}
+
+	/**
+	 * Method to split the fields that follow the operation; the last field
+	 * takes the rest of the line.
+	 *
+	 * @param op the operation number
+	 * @param rest the line after the first comma, null when there is none
+	 * @return the trimmed fields
+	 * @throws IllegalArgumentException when the number of fields is wrong
+	 */
+	static String[] splitFields(int op, String rest){
+		String[] f = rest == null ? new String[0] : rest.split(",", FIELDS[op]);
+		if (f.length != FIELDS[op])
+			throw new IllegalArgumentException(NAMES[op] + " takes " + FIELDS[op] + " fields, got " + f.length);
+		for (int i = 0; i < f.length; ++i) f[i] = f[i].trim();
+		return f;
+	}
+
+	/*
+	 * applies the pending commands as one transaction, falling back to one
+	 * command at a time when the transaction fails, then closes the requests.
+	 */
+	private void flush(List<Command> pending){
+		if (pending.isEmpty()) return;
+		insert(pending);
+		close(pending);
+	}//end flush
+
+	private void insert(List<Command> pending){
+		boolean any = false;
+		for (Command c : pending)
+			any |= c._op != CLOSE;
+		if (!any) return;
+		++this._transactions;
+		// commands that inserted no row, a car the customer does not own
+		HashSet<Command> refused = new HashSet<Command>();
+		try{
+			this._esql.beginTransaction();
+			for (int op = 1; op < STATEMENTS.length; ++op){
+				List<Command> commands = new ArrayList<Command>();
+				List<Object[]> rows = new ArrayList<Object[]>();
+				for (Command c : pending){
+					if (c._op != op) continue;
+					commands.add(c);
+					rows.add(c._params);
+				}//end for
+				if (rows.isEmpty()) continue;
+				int[] counts = this._esql.executeBatch(STATEMENTS[op], rows);
+				for (int i = 0; i < counts.length; ++i)
+					if (counts[i] == 0) refused.add(commands.get(i));
+			}//end for
+			this._esql.commit();
+			for (Command c : pending){
+				if (c._op == CLOSE) continue;
+				if (refused.contains(c)) reject(c._line, NOT_OWNED);
+				else applied(c);
+			}//end for
+			return;
+		}catch (SQLException e){
+			this._esql.rollback();
+		}//end try
+
+		++this._replays;
+		for (Command c : pending){
+			if (c._op == CLOSE) continue;
+			try{
+				if (this._esql.executeUpdate(STATEMENTS[c._op], c._params) == 0) reject(c._line, NOT_OWNED);
+				else applied(c);
+			}catch (SQLException e){
+				reject(c._line, e.getMessage());
+			}//end try
+		}//end for
+	}//end insert
+
+	private void close(List<Command> pending){
+		List<Object[]> requests = new ArrayList<Object[]>();
+		List<Integer> lines = new ArrayList<Integer>();
+		for (Command c : pending){
+			if (c._op != CLOSE) continue;
+			requests.add(c._params);
+			lines.add(c._line);
+		}//end for
+		if (requests.isEmpty()) return;
+		List<String> rejected = new ArrayList<String>();
+		try{
+			int closed = MechanicShop.closeServiceRequests(this._esql, requests, this._batchSize, rejected);
+			this._applied += closed;
+			this._perOp[CLOSE] += closed;
+		}catch (SQLException e){
+			for (int line : lines)
+				reject(line, e.getMessage());
+			return;
+		}//end try
+		// the reasons name the rid, not the line
+		for (String reason : rejected){
+			++this._failed;
+			System.err.println(reason);
+		}//end for
+	}//end close
+
+	private void applied(Command c){
+		++this._applied;
+		++this._perOp[c._op];
+		// the row is committed, so the cached lookups may be refreshed
+		if (c._op == 1)
+			this._esql.customerAdded((String) c._params[2]);
+		if (c._op == 4)
+			System.out.println("line " + c._line + ": service request id " + c._params[0]);
+	}
+
+	private void reject(int lineNo, String reason){
+		++this._failed;
+		System.err.println("line " + lineNo + ": " + reason);
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class closes service requests in bulk from lines in the format of
+ * code/data/closed_request.csv:
+ *
+ * <pre>
+ * &lt;wid&gt;,&lt;rid&gt;,&lt;mid&gt;,&lt;date&gt;,&lt;comment&gt;,&lt;bill&gt;
+ * </pre>
+ *
+ * The wid is ignored and a new one taken from the id generator.  The comment
+ * may contain commas; it is everything between the fourth and the last
+ * comma.  Requests are closed in chunks of chunkSize with
+ * MechanicShop.closeServiceRequests, so each chunk is one statement and one
+ * transaction, and a request that cannot be closed is reported without
+ * holding up the rest of its chunk.
+ *
+ */
+
+public class BulkCloser{
+	private final MechanicShop _esql;
+	private final int _chunkSize;
+
+	//statistics
+	private long _read = 0;
+	private long _closed = 0;
+	private long _failed = 0;
+
+	public BulkCloser(MechanicShop esql, int chunkSize){
+		this._esql = esql;
+		this._chunkSize = Math.max(1, chunkSize);
+	}
+
+	/**
+	 * Method to close the request of every line and print the summary.
+	 *
+	 * @param lines the closed requests, one per line
+	 * @return the number of requests closed
+	 * @throws java.io.IOException when the lines could not be read
+	 * @throws java.sql.SQLException when no wids could be reserved
+	 */
+	public long run(BufferedReader lines) throws IOException, SQLException {
+		long start = System.nanoTime();
+		List<Object[]> pending = new ArrayList<Object[]>(this._chunkSize);
+		String text;
+		int lineNo = 0;
+		while ((text = lines.readLine()) != null){
+			++lineNo;
+			String line = text.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			++this._read;
+			try{
+				pending.add(parse(line));
+			}catch (RuntimeException e){
+				++this._failed;
+				System.err.println("line " + lineNo + ": invalid request: " + e.getMessage());
+				continue;
+			}//end try
+			if (pending.size() >= this._chunkSize){
+				flush(pending);
+				pending.clear();
+			}//end if
+		}//end while
+		flush(pending);
+
+		long nanos = System.nanoTime() - start;
+		System.out.println("CLOSE SUMMARY");
+		System.out.println("-------------");
+		System.out.printf("requests read          %10d%n", this._read);
+		System.out.printf("closed / failed        %10d / %d%n", this._closed, this._failed);
+		System.out.printf("elapsed                %10.1f ms%n", nanos / 1e6);
+		System.out.printf("throughput             %10.0f requests/s%n", this._closed / (nanos / 1e9));
+		return this._closed;
+	}//end run
+
+	/**
+	 * Method to parse one line into the arguments of closeServiceRequests.
+	 *
+	 * @param line wid,rid,mid,date,comment,bill
+	 * @return {rid, mid, java.sql.Date, comment, bill}
+	 * @throws IllegalArgumentException when a field is missing or invalid
+	 */
+	static Object[] parse(String line){
+		int c1 = line.indexOf(',');
+		int c2 = c1 < 0 ? -1 : line.indexOf(',', c1 + 1);
+		int c3 = c2 < 0 ? -1 : line.indexOf(',', c2 + 1);
+		int last = line.lastIndexOf(',');
+		if (c3 < 0 || last <= c3)
+			throw new IllegalArgumentException("expected wid,rid,mid,date,comment,bill");
+		int c4 = line.indexOf(',', c3 + 1);
+		return new Object[]{
+			Integer.parseInt(line.substring(c1 + 1, c2).trim()),
+			Integer.parseInt(line.substring(c2 + 1, c3).trim()),
+			java.sql.Date.valueOf(BulkLoader.normalizeDate(line.substring(c3 + 1, c4).trim())),
+			c4 == last ? "" : line.substring(c4 + 1, last),
+			Integer.parseInt(line.substring(last + 1).trim())
+		};
+	}
+
+	private void flush(List<Object[]> pending) throws SQLException {
+		if (pending.isEmpty()) return;
+		List<String> rejected = new ArrayList<String>();
+		this._closed += MechanicShop.closeServiceRequests(this._esql, pending, this._chunkSize, rejected);
+		this._failed += rejected.size();
+		for (String reason : rejected)
+			System.err.println(reason);
+	}
+}
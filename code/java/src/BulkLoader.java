@@ -0,0 +1,302 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class loads the code/data CSV files from the client through the COPY
+ * protocol, so the files do not have to be on the database host.  Dates such
+ * as "5/20/2016 00:00" are rewritten to ISO "2016-05-20" while streaming, so
+ * the load does not depend on the server's DateStyle.  Tables are loaded in
+ * foreign key order; tables within one stage do not reference each other
+ * and are loaded in parallel on separate connections.  The report aggregate
+ * and change event triggers are switched off during the load and the
+ * aggregates rebuilt once at the end, instead of being updated row by row.
+ * Each table is copied in a transaction that switches its own triggers off
+ * and on again, so other sessions never see them off and a loader that dies
+ * midway leaves them on.
+ *
+ */
+
+public class BulkLoader{
+
+	/*
+	 * one CSV file and the table it is copied into
+	 */
+	private static class Table{
+		private final String _name;
+		private final String _file;
+		private final String _columns;
+		//0-based fields holding an M/D/YYYY date, -1 when none
+		private final int _dateField;
+		//triggers switched off while the table is copied
+		private final String[] _triggers;
+
+		Table(String name, String file, String columns, int dateField, String... triggers){
+			this._name = name;
+			this._file = file;
+			this._columns = columns;
+			this._dateField = dateField;
+			this._triggers = triggers;
+		}
+	}
+
+	//each stage only references tables of earlier stages; the change events
+	//would keep every loaded row in a transition table
+	private static final Table[][] STAGES = {
+		{
+			new Table("Customer", "customer.csv", "id, fname, lname, phone, address", -1, "Customer_insert_events"),
+			new Table("Mechanic", "mechanic.csv", "id, fname, lname, experience", -1),
+			new Table("Car", "car.csv", "vin, make, model, year", -1, "Car_insert_events")
+		},
+		{
+			new Table("Owns", "owns.csv", "ownership_id, customer_id, car_vin", -1, "Owns_insert_events"),
+			new Table("Service_Request", "service_request.csv", "rid, customer_id, car_vin, date, odometer, complain", 3,
+				"Service_Request_aggregates", "Service_Request_insert_events")
+		},
+		{
+			new Table("Closed_Request", "closed_request.csv", "wid, rid, mid, date, comment, bill", 3,
+				"Closed_Request_aggregates", "Closed_Request_insert_events")
+		}
+	};
+	//tables whose inserts publish change events (see create.sql)
+	private static final String[] EVENT_TABLES = { "Customer", "Car", "Owns", "Service_Request", "Closed_Request" };
+
+	private final MechanicShop _esql;
+	private final File _dir;
+	private final int _threads;
+
+	public BulkLoader(MechanicShop esql, File dir, int threads){
+		this._esql = esql;
+		this._dir = dir;
+		this._threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Method to load every CSV file of the data directory, stage by stage,
+	 * and move the id sequences past the loaded keys.  The throughput of each
+	 * table is printed as it completes.
+	 *
+	 * @param truncate empty the six tables, their archive and the report
+	 *        summaries before loading
+	 * @throws java.sql.SQLException when a COPY failed; later stages are not
+	 *         started
+	 */
+	public void load(boolean truncate) throws SQLException {
+		if (truncate)
+			this._esql.executeUpdate("TRUNCATE Customer_Bill_Total, Car_Service_Count, Closed_Request_Archive, Service_Request_Archive, Closed_Request, Service_Request, Owns, Car, Mechanic, Customer");
+
+		ExecutorService workers = Executors.newFixedThreadPool(this._threads);
+		long start = System.nanoTime();
+		long total = 0;
+		try{
+			for (Table[] stage : STAGES){
+				List<Future<Long>> loads = new ArrayList<Future<Long>>();
+				for (Table table : stage)
+					loads.add(workers.submit(() -> loadTable(table)));
+				for (Future<Long> load : loads)
+					total += await(load);
+			}//end for
+		}finally{
+			workers.shutdownNow();
+			this._esql.executeQuery("SELECT rebuild_report_aggregates()");
+			// one whole table event per table instead, so caches are reloaded
+			this._esql.executeQuery("SELECT pg_notify(?, lower(T.name) || ' T') FROM unnest(?::text[]) AS T(name)",
+				ChangeListener.CHANNEL, "{" + String.join(",", EVENT_TABLES) + "}");
+		}
+		long nanos = System.nanoTime() - start;
+		System.out.printf("%-16s %10d rows %9.1f ms %12.0f rows/s%n", "total", total, nanos / 1e6, total / (nanos / 1e9));
+
+		// archived requests keep their ids, so the views cover the archive too
+		resetSequence(IdGenerator.SERVICE_REQUEST_RID, "rid", "Service_Request_History");
+		resetSequence(IdGenerator.OWNS_OWNERSHIP_ID, "ownership_id", "Owns");
+		resetSequence(IdGenerator.CLOSED_REQUEST_WID, "wid", "Closed_Request_History");
+	}//end load
+
+	private long loadTable(Table table) throws SQLException, IOException {
+		File file = new File(this._dir, table._file);
+		long start = System.nanoTime();
+		long rows;
+		try (NormalizingReader reader = new NormalizingReader(new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16), table._dateField)){
+			// ALTER TABLE is transactional: the triggers are only off inside it
+			this._esql.beginTransaction();
+			try{
+				for (String trigger : table._triggers)
+					this._esql.executeUpdate("ALTER TABLE " + table._name + " DISABLE TRIGGER " + trigger);
+				this._esql.copyIn("COPY " + table._name + " (" + table._columns + ") FROM STDIN WITH DELIMITER ','", reader);
+				for (String trigger : table._triggers)
+					this._esql.executeUpdate("ALTER TABLE " + table._name + " ENABLE TRIGGER " + trigger);
+				this._esql.commit();
+			}finally{
+				this._esql.rollback();
+			}
+			rows = reader._rows;
+		}
+		long nanos = System.nanoTime() - start;
+		System.out.printf("%-16s %10d rows %9.1f ms %12.0f rows/s%n", table._name, rows, nanos / 1e6, rows / (nanos / 1e9));
+		return rows;
+	}
+
+	private void resetSequence(String sequence, String column, String table) throws SQLException {
+		this._esql.executeQuery("SELECT setval(?::regclass, (SELECT COALESCE(MAX(" + column + "), 0) + 1 FROM " + table + "), false)", sequence);
+	}
+
+	private static long await(Future<Long> load) throws SQLException {
+		try{
+			return load.get();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while loading");
+		}catch (ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) throw (SQLException) cause;
+			throw new SQLException("Load failed: " + cause.getMessage(), cause);
+		}//end try
+	}
+
+	/**
+	 * Method to rewrite a M/D/YYYY[ HH:MM] date as YYYY-MM-DD.  Any other
+	 * text is returned unchanged.
+	 *
+	 * @param value the date as written in the CSV files
+	 * @return the ISO date
+	 */
+	static String normalizeDate(String value){
+		StringBuilder out = new StringBuilder(10);
+		appendDate(out, value, 0, value.length());
+		return out.toString();
+	}
+
+	/**
+	 * Method to append the date value[start, end) to out, rewriting
+	 * M/D/YYYY[ HH:MM] as YYYY-MM-DD.  Any other text is appended unchanged
+	 * and left for the server to parse.
+	 *
+	 * @param out the line being built
+	 * @param value the CSV line
+	 * @param start first character of the date field
+	 * @param end end of the date field (exclusive)
+	 */
+	static void appendDate(StringBuilder out, String value, int start, int end){
+		// parts are month, day, year
+		int month = 0, day = 0, year = 0;
+		int part = 0;
+		int digits = 0;
+		int i = start;
+		for (; i < end && part < 3; ++i){
+			char c = value.charAt(i);
+			if (c >= '0' && c <= '9'){
+				int d = c - '0';
+				if (part == 0) month = month * 10 + d;
+				else if (part == 1) day = day * 10 + d;
+				else year = year * 10 + d;
+				++digits;
+			}else if (digits > 0 && ((c == '/' && part < 2) || (c == ' ' && part == 2))){
+				++part;
+				digits = 0;
+			}else{
+				break;
+			}//end if
+		}//end for
+		boolean complete = part == 3 || (part == 2 && digits > 0 && i == end);
+		if (!complete){
+			out.append(value, start, end);
+			return;
+		}//end if
+		appendPadded(out, year, 4).append('-');
+		appendPadded(out, month, 2).append('-');
+		appendPadded(out, day, 2);
+	}
+
+	private static StringBuilder appendPadded(StringBuilder out, int value, int width){
+		int limit = 1;
+		while (--width > 0) limit *= 10;
+		for (; limit > 1 && value < limit; limit /= 10)
+			out.append('0');
+		return out.append(value);
+	}
+
+	/*
+	 * reads the CSV line by line, rewrites the date field and serves the
+	 * result to the COPY stream, keeping only one line in memory.
+	 */
+	private static class NormalizingReader extends Reader{
+		private final BufferedReader _source;
+		private final int _dateField;
+		private final StringBuilder _line = new StringBuilder(256);
+		private int _pos = 0;
+		private long _rows = 0;
+
+		NormalizingReader(BufferedReader source, int dateField){
+			this._source = source;
+			this._dateField = dateField;
+		}
+
+		public int read(char[] buf, int off, int len) throws IOException {
+			if (this._pos == this._line.length() && !nextLine()) return -1;
+			int n = Math.min(len, this._line.length() - this._pos);
+			this._line.getChars(this._pos, this._pos + n, buf, off);
+			this._pos += n;
+			return n;
+		}
+
+		private boolean nextLine() throws IOException {
+			String line;
+			do{
+				line = this._source.readLine();
+				if (line == null) return false;
+			}while (line.isEmpty());
+
+			this._line.setLength(0);
+			this._pos = 0;
+			if (this._dateField < 0){
+				this._line.append(line);
+			}else{
+				int start = 0;
+				for (int i = 0; i < this._dateField && start >= 0; ++i){
+					start = line.indexOf(',', start);
+					if (start >= 0) ++start;
+				}//end for
+				int end = start < 0 ? -1 : line.indexOf(',', start);
+				if (end < 0){
+					this._line.append(line);
+				}else{
+					this._line.append(line, 0, start);
+					appendDate(this._line, line, start, end);
+					this._line.append(line, end, line.length());
+				}//end if
+			}//end if
+			this._line.append('\n');
+			++this._rows;
+			return true;
+		}
+
+		public void close() throws IOException {
+			this._source.close();
+		}
+	}//end NormalizingReader
+}
@@ -0,0 +1,212 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class receives the change events the triggers of create.sql publish
+ * on the mechanicshop_changes channel when a statement writes Customer,
+ * Car, Owns, Service_Request or Closed_Request, whichever instance or
+ * client ran it.  A background thread listens on a connection of its own,
+ * outside the pool, and hands every event to the subscribers of its table.
+ *
+ * An event is the table, the operation (I, U, D or T for truncate) and the
+ * keys of the changed rows: the last name for Customer, vin for Car,
+ * customer_id for Owns and rid for Service_Request and Closed_Request.  A
+ * statement that changed many rows, a truncate or a bulk load has no keys
+ * and means the whole table may have changed.  Events of a transaction
+ * arrive after it commits.  When the connection is lost, every subscriber
+ * gets a whole table event once it is back, since events sent meanwhile are
+ * lost.
+ *
+ */
+
+public class ChangeListener{
+	public static final String CHANNEL = "mechanicshop_changes";
+
+	/*
+	 * receives the events of a table
+	 */
+	public interface Subscriber{
+		/**
+		 * @param table the table name, in lower case
+		 * @param op I, U, D or T
+		 * @param keys the keys of the changed rows, null for the whole table
+		 */
+		void changed(String table, char op, List<String> keys);
+	}
+
+	private final String _url;
+	private final Properties _props;
+	private final long _pollMillis;
+	private final Map<String, List<Subscriber>> _subscribers = new ConcurrentHashMap<String, List<Subscriber>>();
+	private final Thread _listener;
+	private volatile boolean _closing = false;
+	private volatile Connection _connection = null;
+
+	//statistics
+	private final AtomicLong _events = new AtomicLong();
+	private final AtomicLong _wholeTable = new AtomicLong();
+	private final AtomicLong _reconnects = new AtomicLong();
+
+	/**
+	 * Method to connect and start listening.
+	 *
+	 * @param url the JDBC URL of the database
+	 * @param props the connection properties
+	 * @param pollMillis how long one wait for events may block
+	 * @throws java.sql.SQLException when the first connection failed
+	 */
+	public ChangeListener(String url, Properties props, long pollMillis) throws SQLException {
+		this._url = url;
+		this._props = props;
+		this._pollMillis = Math.max(1, pollMillis);
+		this._connection = connect();
+		this._listener = new Thread(this::listenLoop, "change-listener");
+		this._listener.setDaemon(true);
+		this._listener.start();
+	}
+
+	/**
+	 * Method to receive the events of a table from now on.
+	 *
+	 * @param table the table name, in any case
+	 * @param subscriber called on the listener thread; it must not block
+	 */
+	public void subscribe(String table, Subscriber subscriber){
+		this._subscribers.computeIfAbsent(table.toLowerCase(), t -> new CopyOnWriteArrayList<Subscriber>()).add(subscriber);
+	}
+
+	public void unsubscribe(String table, Subscriber subscriber){
+		List<Subscriber> list = this._subscribers.get(table.toLowerCase());
+		if (list != null) list.remove(subscriber);
+	}
+
+	/**
+	 * Method to stop listening and close the connection.
+	 */
+	public void close(){
+		this._closing = true;
+		this._listener.interrupt();
+		try{
+			this._listener.join(this._pollMillis + 1000);
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}//end try
+		close(this._connection);
+	}
+
+	public String getStats(){
+		return String.format("%-22s: %d events, %d whole table, %d reconnects, %s",
+			"change events", this._events.get(), this._wholeTable.get(), this._reconnects.get(), this._subscribers.keySet());
+	}
+
+	/**
+	 * Method to parse the payload of an event: the table and operation on
+	 * the first line, then one key per line.
+	 *
+	 * @param payload the payload sent by notify_changes
+	 * @param subscribers called with the parsed event
+	 */
+	static void dispatch(String payload, Map<String, List<Subscriber>> subscribers){
+		String[] lines = payload.split("\n");
+		int space = lines[0].indexOf(' ');
+		if (space < 0) return;
+		String table = lines[0].substring(0, space);
+		char op = lines[0].charAt(space + 1);
+		List<String> keys = lines.length == 1 ? null : Collections.unmodifiableList(Arrays.asList(lines).subList(1, lines.length));
+		List<Subscriber> list = subscribers.get(table);
+		if (list == null) return;
+		for (Subscriber s : list){
+			try{
+				s.changed(table, op, keys);
+			}catch (RuntimeException e){
+				System.err.println("Change subscriber of " + table + " failed: " + e);
+			}//end try
+		}//end for
+	}
+
+	private Connection connect() throws SQLException {
+		Connection conn = DriverManager.getConnection(this._url, this._props);
+		try (Statement stmt = conn.createStatement()){
+			stmt.execute("LISTEN " + CHANNEL);
+		}catch (SQLException e){
+			close(conn);
+			throw e;
+		}//end try
+		return conn;
+	}
+
+	/*
+	 * waits for events and dispatches them; reconnects with backoff when the
+	 * connection fails
+	 */
+	private void listenLoop(){
+		long backoff = 500;
+		while (!this._closing){
+			try{
+				if (this._connection == null){
+					this._connection = connect();
+					this._reconnects.incrementAndGet();
+					backoff = 500;
+					// events sent while disconnected are lost
+					for (Map.Entry<String, List<Subscriber>> e : this._subscribers.entrySet())
+						dispatch(e.getKey() + " T", this._subscribers);
+				}//end if
+				PGNotification[] notifications = this._connection.unwrap(PGConnection.class)
+					.getNotifications((int) Math.min(Integer.MAX_VALUE, this._pollMillis));
+				if (notifications == null) continue;
+				for (PGNotification n : notifications){
+					if (!CHANNEL.equals(n.getName())) continue;
+					this._events.incrementAndGet();
+					if (n.getParameter().indexOf('\n') < 0) this._wholeTable.incrementAndGet();
+					dispatch(n.getParameter(), this._subscribers);
+				}//end for
+			}catch (SQLException e){
+				if (this._closing) break;
+				System.err.println("Change listener lost its connection, retrying in " + backoff + " ms: " + e.getMessage());
+				close(this._connection);
+				this._connection = null;
+				try{
+					Thread.sleep(backoff);
+				}catch (InterruptedException ie){
+					break;
+				}//end try
+				backoff = Math.min(30000, backoff * 2);
+			}//end try
+		}//end while
+	}
+
+	private static void close(Connection conn){
+		if (conn == null) return;
+		try{
+			conn.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class holds a query result column by column.  Integer columns are
+ * kept in int[], bigint in long[], numeric and floating point in double[]
+ * and dates as int[] days since 1970-01-01, so reading a numeric column
+ * allocates nothing per row.  Any other type is kept as String[].  Nulls are
+ * tracked in one bit set per column.
+ *
+ */
+
+public class ColumnarResult{
+
+	public enum Kind{ INT, LONG, DOUBLE, DATE, STRING }
+
+	private final String[] _names;
+	private final Kind[] _kinds;
+	//one of int[], long[], double[] or String[] per column
+	private final Object[] _data;
+	private final BitSet[] _nulls;
+	private int _rows = 0;
+
+	private ColumnarResult(String[] names, Kind[] kinds){
+		this._names = names;
+		this._kinds = kinds;
+		this._data = new Object[names.length];
+		this._nulls = new BitSet[names.length];
+		for (int i = 0; i < names.length; ++i){
+			this._nulls[i] = new BitSet();
+			switch (kinds[i]){
+				case INT: case DATE: this._data[i] = new int[64]; break;
+				case LONG: this._data[i] = new long[64]; break;
+				case DOUBLE: this._data[i] = new double[64]; break;
+				default: this._data[i] = new String[64]; break;
+			}
+		}//end for
+	}
+
+	/**
+	 * Method to read every remaining row of a result set into columns.
+	 *
+	 * @param rs the result set positioned before the first row
+	 * @return the columnar copy of the rows
+	 * @throws java.sql.SQLException when reading the result failed
+	 */
+	public static ColumnarResult read(ResultSet rs) throws SQLException {
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int numCol = rsmd.getColumnCount();
+		String[] names = new String[numCol];
+		Kind[] kinds = new Kind[numCol];
+		for (int i = 0; i < numCol; ++i){
+			names[i] = rsmd.getColumnName(i + 1);
+			kinds[i] = kindOf(rsmd.getColumnType(i + 1));
+		}//end for
+
+		ColumnarResult result = new ColumnarResult(names, kinds);
+		while (rs.next())
+			result.append(rs);
+		result.trim();
+		return result;
+	}//end read
+
+	/**
+	 * Method to wrap columns computed without a database.  Null String
+	 * values are null cells; the other kinds have none.
+	 *
+	 * @param names the column names
+	 * @param kinds the kind of every column
+	 * @param columns one int[] (INT and DATE), long[], double[] or String[]
+	 *        per column, each holding at least rows values
+	 * @param rows the number of rows
+	 * @return the result, holding copies of the first rows values
+	 */
+	static ColumnarResult of(String[] names, Kind[] kinds, Object[] columns, int rows){
+		ColumnarResult result = new ColumnarResult(names, kinds);
+		for (int i = 0; i < names.length; ++i)
+			result._data[i] = columns[i];
+		result._rows = rows;
+		result.trim();
+		for (int i = 0; i < names.length; ++i)
+			if (kinds[i] == Kind.STRING){
+				String[] values = (String[]) result._data[i];
+				for (int row = 0; row < rows; ++row)
+					if (values[row] == null) result._nulls[i].set(row);
+			}//end if
+		return result;
+	}
+
+	private static Kind kindOf(int sqlType){
+		switch (sqlType){
+			case Types.INTEGER: case Types.SMALLINT: case Types.TINYINT: return Kind.INT;
+			case Types.BIGINT: return Kind.LONG;
+			case Types.NUMERIC: case Types.DECIMAL: case Types.DOUBLE:
+			case Types.FLOAT: case Types.REAL: return Kind.DOUBLE;
+			case Types.DATE: return Kind.DATE;
+			default: return Kind.STRING;
+		}
+	}
+
+	private void append(ResultSet rs) throws SQLException {
+		int row = this._rows;
+		if (row == capacity()) grow();
+		for (int i = 0; i < this._names.length; ++i){
+			int col = i + 1;
+			switch (this._kinds[i]){
+				case INT:
+					((int[]) this._data[i])[row] = rs.getInt(col);
+					break;
+				case LONG:
+					((long[]) this._data[i])[row] = rs.getLong(col);
+					break;
+				case DOUBLE:
+					((double[]) this._data[i])[row] = rs.getDouble(col);
+					break;
+				case DATE:
+					java.sql.Date date = rs.getDate(col);
+					if (date != null) ((int[]) this._data[i])[row] = (int) date.toLocalDate().toEpochDay();
+					break;
+				default:
+					((String[]) this._data[i])[row] = rs.getString(col);
+					break;
+			}
+			if (rs.wasNull()) this._nulls[i].set(row);
+		}//end for
+		this._rows = row + 1;
+	}
+
+	private int capacity(){
+		if (this._data.length == 0) return Integer.MAX_VALUE;
+		Object first = this._data[0];
+		if (first instanceof int[]) return ((int[]) first).length;
+		if (first instanceof long[]) return ((long[]) first).length;
+		if (first instanceof double[]) return ((double[]) first).length;
+		return ((String[]) first).length;
+	}
+
+	private void grow(){
+		resize(capacity() * 2);
+	}
+
+	private void trim(){
+		if (this._data.length > 0) resize(this._rows);
+	}
+
+	private void resize(int size){
+		for (int i = 0; i < this._data.length; ++i){
+			Object column = this._data[i];
+			if (column instanceof int[]) this._data[i] = Arrays.copyOf((int[]) column, size);
+			else if (column instanceof long[]) this._data[i] = Arrays.copyOf((long[]) column, size);
+			else if (column instanceof double[]) this._data[i] = Arrays.copyOf((double[]) column, size);
+			else this._data[i] = Arrays.copyOf((String[]) column, size);
+		}//end for
+	}
+
+	public int getRowCount(){
+		return this._rows;
+	}
+
+	public int getColumnCount(){
+		return this._names.length;
+	}
+
+	/**
+	 * @param column 1-based column index, as in JDBC
+	 */
+	public String getColumnName(int column){
+		return this._names[column - 1];
+	}
+
+	public Kind getKind(int column){
+		return this._kinds[column - 1];
+	}
+
+	/**
+	 * @param row 0-based row index
+	 * @param column 1-based column index
+	 */
+	public boolean isNull(int row, int column){
+		return this._nulls[column - 1].get(row);
+	}
+
+	/**
+	 * Method to access an INT or DATE column as a primitive array of
+	 * exactly getRowCount() values.  Null cells read as 0.
+	 */
+	public int[] getIntColumn(int column){
+		return (int[]) this._data[column - 1];
+	}
+
+	public long[] getLongColumn(int column){
+		return (long[]) this._data[column - 1];
+	}
+
+	public double[] getDoubleColumn(int column){
+		return (double[]) this._data[column - 1];
+	}
+
+	public String[] getStringColumn(int column){
+		return (String[]) this._data[column - 1];
+	}
+
+	public int getInt(int row, int column){
+		return getIntColumn(column)[row];
+	}
+
+	public long getLong(int row, int column){
+		Object data = this._data[column - 1];
+		return data instanceof long[] ? ((long[]) data)[row] : ((int[]) data)[row];
+	}
+
+	public double getDouble(int row, int column){
+		Object data = this._data[column - 1];
+		if (data instanceof double[]) return ((double[]) data)[row];
+		return getLong(row, column);
+	}
+
+	public LocalDate getDate(int row, int column){
+		return isNull(row, column) ? null : LocalDate.ofEpochDay(getIntColumn(column)[row]);
+	}
+
+	/**
+	 * Method to read a cell as a value that can be bound back to a
+	 * statement: Integer, Long, Double, java.sql.Date, String or null.
+	 */
+	public Object getObject(int row, int column){
+		if (isNull(row, column)) return null;
+		switch (this._kinds[column - 1]){
+			case INT: return getIntColumn(column)[row];
+			case LONG: return getLongColumn(column)[row];
+			case DOUBLE: return getDoubleColumn(column)[row];
+			case DATE: return java.sql.Date.valueOf(getDate(row, column));
+			default: return getStringColumn(column)[row];
+		}
+	}
+
+	/**
+	 * Method to read any cell as text.  Numeric columns are formatted by
+	 * Java, so a NUMERIC value may print differently from the driver's
+	 * getString.
+	 */
+	public String getString(int row, int column){
+		if (isNull(row, column)) return null;
+		switch (this._kinds[column - 1]){
+			case INT: return Integer.toString(getIntColumn(column)[row]);
+			case LONG: return Long.toString(getLongColumn(column)[row]);
+			case DOUBLE: return Double.toString(getDoubleColumn(column)[row]);
+			case DATE: return getDate(row, column).toString();
+			default: return getStringColumn(column)[row];
+		}
+	}
+}
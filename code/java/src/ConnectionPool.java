@@ -0,0 +1,290 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a bounded pool of physical PostgreSQL connections. At
+ * most maxSize connections are lent out at once; callers beyond that wait up
+ * to the acquire timeout. Idle connections above minSize are closed by a
+ * background evictor, and connections that sat idle are validated before
+ * being handed out again. Each pooled connection carries its own prepared
+ * statement cache.
+ *
+ */
+
+public class ConnectionPool{
+
+	/**
+	 * A physical connection together with the statements prepared on it.
+	 */
+	public static class PooledConnection{
+		private final Connection _connection;
+		private final StatementCache _statements;
+		private long _lastUsed;
+
+		PooledConnection(Connection connection, int statementCacheSize){
+			this._connection = connection;
+			this._statements = new StatementCache(connection, statementCacheSize);
+			this._lastUsed = System.currentTimeMillis();
+		}
+
+		public Connection getConnection(){
+			return this._connection;
+		}
+
+		public StatementCache getStatementCache(){
+			return this._statements;
+		}
+
+		void close(){
+			this._statements.close();
+			try{
+				this._connection.close();
+			}catch (SQLException e){
+				// ignored.
+			}//end try
+		}
+	}//end PooledConnection
+
+	private final String _url;
+	private final Properties _props;
+	private final int _minSize;
+	private final int _maxSize;
+	private final long _acquireTimeoutMillis;
+	private final long _idleTimeoutMillis;
+	private final long _validateAfterMillis;
+	private final int _statementCacheSize;
+
+	//one permit per connection that may be lent out
+	private final Semaphore _permits;
+	//idle connections, most recently used first so warm statement caches are reused
+	private final ArrayDeque<PooledConnection> _idle = new ArrayDeque<PooledConnection>();
+	private final ScheduledExecutorService _evictor;
+	private volatile boolean _closed = false;
+
+	//metrics
+	private final AtomicInteger _inUse = new AtomicInteger();
+	private final AtomicInteger _peakInUse = new AtomicInteger();
+	private final AtomicLong _acquired = new AtomicLong();
+	private final AtomicLong _timeouts = new AtomicLong();
+	private final AtomicLong _waitNanos = new AtomicLong();
+	private final AtomicLong _maxWaitNanos = new AtomicLong();
+	private final AtomicLong _created = new AtomicLong();
+	private final AtomicLong _destroyed = new AtomicLong();
+
+	public ConnectionPool(String url, Properties props, int minSize, int maxSize,
+			long acquireTimeoutMillis, long idleTimeoutMillis, long validateAfterMillis,
+			int statementCacheSize) throws SQLException {
+		if (maxSize < 1 || minSize < 0 || minSize > maxSize)
+			throw new IllegalArgumentException("invalid pool size min=" + minSize + " max=" + maxSize);
+		this._url = url;
+		this._props = props;
+		this._minSize = minSize;
+		this._maxSize = maxSize;
+		this._acquireTimeoutMillis = acquireTimeoutMillis;
+		this._idleTimeoutMillis = idleTimeoutMillis;
+		this._validateAfterMillis = validateAfterMillis;
+		this._statementCacheSize = statementCacheSize;
+		this._permits = new Semaphore(maxSize, true);
+
+		// opens the minimum number of connections up front so a bad URL fails fast
+		for (int i = 0; i < minSize; ++i)
+			this._idle.push(open());
+
+		this._evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, idleTimeoutMillis / 2);
+		this._evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Method to borrow a connection from the pool, waiting up to the acquire
+	 * timeout when every connection is in use.
+	 *
+	 * @return a connection reserved for the caller until release is called
+	 * @throws java.sql.SQLException when the pool is closed, the wait timed
+	 *         out or a new connection could not be opened
+	 */
+	public PooledConnection acquire() throws SQLException {
+		if (this._closed) throw new SQLException("Connection pool is closed");
+		long start = System.nanoTime();
+		try{
+			if (!this._permits.tryAcquire(this._acquireTimeoutMillis, TimeUnit.MILLISECONDS)){
+				this._timeouts.incrementAndGet();
+				throw new SQLException("Timed out after " + this._acquireTimeoutMillis
+					+ " ms waiting for a database connection (pool max " + this._maxSize + ")");
+			}//end if
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection");
+		}//end try
+
+		PooledConnection pc = null;
+		try{
+			while ((pc = pollIdle()) != null){
+				if (isUsable(pc)) break;
+				destroy(pc);
+			}//end while
+			if (pc == null) pc = open();
+		}catch (SQLException e){
+			this._permits.release();
+			throw e;
+		}//end try
+
+		long waited = System.nanoTime() - start;
+		this._acquired.incrementAndGet();
+		this._waitNanos.addAndGet(waited);
+		this._maxWaitNanos.accumulateAndGet(waited, Math::max);
+		this._peakInUse.accumulateAndGet(this._inUse.incrementAndGet(), Math::max);
+		return pc;
+	}//end acquire
+
+	/**
+	 * Method to give a borrowed connection back to the pool. An open
+	 * transaction is rolled back and auto-commit restored before the
+	 * connection is reused.
+	 *
+	 * @param pc the connection returned by acquire
+	 */
+	public void release(PooledConnection pc){
+		if (pc == null) return;
+		this._inUse.decrementAndGet();
+		boolean reusable = !this._closed;
+		try{
+			if (pc.getConnection().isClosed()){
+				reusable = false;
+			}else if (!pc.getConnection().getAutoCommit()){
+				pc.getConnection().rollback();
+				pc.getConnection().setAutoCommit(true);
+			}//end if
+		}catch (SQLException e){
+			reusable = false;
+		}//end try
+
+		if (reusable){
+			pc._lastUsed = System.currentTimeMillis();
+			synchronized (this._idle){
+				this._idle.push(pc);
+			}
+		}else{
+			destroy(pc);
+		}//end if
+		this._permits.release();
+	}//end release
+
+	/**
+	 * Method to close every idle connection and refuse further acquires.
+	 * Connections still lent out are closed when they are released.
+	 */
+	public void close(){
+		this._closed = true;
+		this._evictor.shutdownNow();
+		synchronized (this._idle){
+			while (!this._idle.isEmpty())
+				destroy(this._idle.pop());
+		}
+	}//end close
+
+	public int getMaxSize(){
+		return this._maxSize;
+	}
+
+	public int getInUse(){
+		return this._inUse.get();
+	}
+
+	public int getIdle(){
+		synchronized (this._idle){
+			return this._idle.size();
+		}
+	}
+
+	/**
+	 * Method to describe the pool usage: size, saturation (connections in use
+	 * over the maximum) and the time callers spent waiting to acquire.
+	 *
+	 * @return a multi-line human readable summary
+	 */
+	public String getStats(){
+		long acquired = this._acquired.get();
+		int inUse = this._inUse.get();
+		StringBuilder sb = new StringBuilder();
+		sb.append("pool size (min/max)   : ").append(this._minSize).append('/').append(this._maxSize).append('\n');
+		sb.append("in use / idle         : ").append(inUse).append(" / ").append(getIdle()).append('\n');
+		sb.append(String.format("saturation            : %.0f%% (peak %d)%n", 100.0 * inUse / this._maxSize, this._peakInUse.get()));
+		sb.append("acquires / timeouts   : ").append(acquired).append(" / ").append(this._timeouts.get()).append('\n');
+		sb.append(String.format("wait avg / max        : %.3f ms / %.3f ms%n",
+			acquired == 0 ? 0.0 : this._waitNanos.get() / 1e6 / acquired, this._maxWaitNanos.get() / 1e6));
+		sb.append("created / destroyed   : ").append(this._created.get()).append(" / ").append(this._destroyed.get());
+		return sb.toString();
+	}//end getStats
+
+	private PooledConnection pollIdle(){
+		synchronized (this._idle){
+			return this._idle.poll();
+		}
+	}
+
+	private boolean isUsable(PooledConnection pc){
+		try{
+			if (pc.getConnection().isClosed()) return false;
+			if (System.currentTimeMillis() - pc._lastUsed < this._validateAfterMillis) return true;
+			return pc.getConnection().isValid(5);
+		}catch (SQLException e){
+			return false;
+		}//end try
+	}
+
+	private PooledConnection open() throws SQLException {
+		Connection conn = DriverManager.getConnection(this._url, this._props);
+		this._created.incrementAndGet();
+		return new PooledConnection(conn, this._statementCacheSize);
+	}
+
+	private void destroy(PooledConnection pc){
+		pc.close();
+		this._destroyed.incrementAndGet();
+	}
+
+	/*
+	 * closes connections idle for longer than the idle timeout, never going
+	 * below the minimum pool size.
+	 */
+	private void evictIdle(){
+		long cutoff = System.currentTimeMillis() - this._idleTimeoutMillis;
+		synchronized (this._idle){
+			Iterator<PooledConnection> it = this._idle.descendingIterator();
+			while (it.hasNext() && this._idle.size() + this._inUse.get() > this._minSize){
+				PooledConnection pc = it.next();
+				if (pc._lastUsed >= cutoff) break;
+				it.remove();
+				destroy(pc);
+			}//end while
+		}
+	}//end evictIdle
+}
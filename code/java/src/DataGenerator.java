@@ -0,0 +1,310 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * This class writes a synthetic copy of the code/data CSV files scaled by a
+ * factor: 500 customers, 250 mechanics, 5000 cars (each with one owner) and
+ * 30000 service requests per unit of scale, nearly all of them closed.  The
+ * output only depends on the scale and the seed.  Keys reference rows that
+ * exist, every service request is made by the owner of the car, and both
+ * ownership and service history are skewed: a Zipf-distributed share of
+ * the cars goes to a few customers (some owning more than 20 cars) and of
+ * the requests to a few heavily serviced cars.  Rows are written as they are
+ * generated, only the owner of each car is kept in memory.
+ *
+ * Usage: java DataGenerator &lt;output dir&gt; &lt;scale&gt; [seed]
+ */
+
+public class DataGenerator{
+	private static final String[] FIRST_NAMES = {
+		"Aaron", "Abbey", "Abram", "Adele", "Aida", "Aimee", "Alana", "Alberto", "Alec", "Alexandria",
+		"Alfonso", "Allan", "Amalia", "Amina", "Anja", "Annette", "Antoine", "Ardis", "Armand", "Astrid",
+		"Beatriz", "Berta", "Birdie", "Blythe", "Boris", "Brandie", "Brent", "Briana", "Carmen", "Cecil",
+		"Dalia", "Dewayne", "Elvin", "Fermin", "Greta", "Hilda", "Ione", "Jarrod", "Kasey", "Lorna",
+		"Marlo", "Nelida", "Orval", "Pearlie", "Quinn", "Rory", "Selma", "Tobias", "Ursula", "Wyatt"
+	};
+	private static final String[] LAST_NAMES = {
+		"Abee", "Accardo", "Agbayani", "Ahumada", "Allard", "Alves", "Amerson", "Anker", "Aparicio", "Archuleta",
+		"Armstrong", "Asaro", "Ault", "Bachman", "Balzer", "Barbosa", "Barnwell", "Bartz", "Bastian", "Beier",
+		"Benedetti", "Bernal", "Berner", "Blum", "Bonham", "Borden", "Bove", "Cuyler", "Enderle", "Fenske",
+		"Gandy", "Hargrove", "Ingalls", "Jeter", "Kimbrough", "Lasalle", "Mccurdy", "Nolin", "Ortego", "Pinto",
+		"Quintero", "Ruoff", "Santacruz", "Scarlett", "Tolliver", "Umana", "Vanover", "Whitten", "Yancey", "Zeller"
+	};
+	private static final String[] STREETS = {
+		"Chapel Drive", "Bald Hill Street", "Campfire Ave.", "Young Avenue", "East Warren St.", "10th Ave.",
+		"Academy Circle", "Adams Rd.", "Addison Road", "Airport Avenue", "Andover Lane", "Arcadia Dr.",
+		"Argyle Avenue", "Ashley St.", "Atlantic Rd.", "Augusta Drive", "Bank St.", "Bay Avenue"
+	};
+	private static final String[] CITIES = {
+		"Melbourne", "Baton Rouge", "Cockeysville", "Oak Forest", "New Brunswick", "Jackson Heights NY 11372",
+		"Latrobe", "Wethersfield CT 06109", "Milford MA 01757", "Atlanta GA 30303", "Grand Island",
+		"Dubuque IA 52001", "Gettysburg PA 17325", "Cape Coral FL 33904", "Joliet", "Evanston IL 60201", "Riverside"
+	};
+	private static final String[] MAKES = {
+		"Alfa Romeo", "Aston Martin", "Audi", "BMW", "Cadillac", "Chevrolet", "Ferrari", "Fiat", "Ford", "Honda",
+		"Hyundai", "Jaguar", "Jeep", "Kia", "Lamborghini", "Lexus", "Lotus", "Mazda", "Mercedes-Benz", "Mini",
+		"Morgan", "Nissan", "Pagani", "Porsche", "Proton", "Saab", "Subaru", "Tesla", "Toyota", "Volvo"
+	};
+	private static final String[] MODELS = {
+		" Prius", "C1", "C2", "C3", "C4", "C5", "Camry", "Cooper", "Corolla", "DB", "DB7", "DB8", "Elentra",
+		"Impreza", "Jimny", "M1", "M2", "M5", "Passat", "Polo", "Prius", "RX5", "Rio", "Summer", "Sunny"
+	};
+	private static final String[] COMPLAINTS = {
+		"Add rockets", "Burns too much gas", "Change oil", "I cannot hear the horn", "I cannot hear the radio",
+		"It came back from space and it makes a funny noise", "It is not fast enough", "It smells funny",
+		"Needs new parachute", "No brakes", "Passenger side is always empty", "Replace windows",
+		"The wheel does not turn right", "The wings do not work"
+	};
+	private static final String[] COMMENTS = {
+		"Breaks", "Breaks are ok", "Buy a new Car", "Change Roof", "Changed Oil", "Fixed!!!", "Good Luck",
+		"I do not know", "Made it faster", "Needs new Tires", "This is a bicycle", "We changed the color",
+		"We lost your car", "You are missing an engine"
+	};
+
+	//share of cars given to Zipf-ranked owners, the rest are spread evenly
+	private static final double SKEWED_OWNERSHIP = 0.15;
+	//share of requests for Zipf-ranked cars
+	private static final double SKEWED_SERVICE = 0.05;
+	//share of requests that have been closed
+	private static final double CLOSED = 0.99;
+	//requests are dated in [FIRST_DAY, FIRST_DAY + DAYS)
+	private static final long FIRST_DAY = LocalDate.of(2016, 1, 1).toEpochDay();
+	private static final int DAYS = 366;
+
+	private final File _dir;
+	private final int _customers;
+	private final int _mechanics;
+	private final int _cars;
+	private final int _requests;
+	//strides of spread() for customer and car ids
+	private final long _customerStride;
+	private final long _carStride;
+	private long _state;
+	private final StringBuilder _line = new StringBuilder(256);
+	private char[] _chars = new char[256];
+
+	public DataGenerator(File dir, double scale, long seed){
+		this._dir = dir;
+		this._customers = Math.max(1, (int) Math.round(500 * scale));
+		this._mechanics = Math.max(1, (int) Math.round(250 * scale));
+		this._cars = Math.max(1, (int) Math.round(5000 * scale));
+		this._requests = (int) Math.round(30000 * scale);
+		this._state = seed;
+		this._customerStride = strideFor(this._customers);
+		this._carStride = strideFor(this._cars);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2){
+			System.err.println("Usage: java DataGenerator <output dir> <scale> [seed]");
+			return;
+		}//end if
+		File dir = new File(args[0]);
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Unable to create " + dir);
+		double scale = Double.parseDouble(args[1]);
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 166L;
+		new DataGenerator(dir, scale, seed).generate();
+	}
+
+	/**
+	 * Method to write the six CSV files into the output directory.
+	 *
+	 * @throws java.io.IOException when a file could not be written
+	 */
+	public void generate() throws IOException {
+		long start = System.nanoTime();
+		long rows = 0;
+		rows += writeCustomers();
+		rows += writeMechanics();
+		int[] owner = new int[this._cars];
+		rows += writeCarsAndOwners(owner);
+		rows += writeRequests(owner);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d rows written to %s in %.1f s (%.0f rows/s)%n", rows, this._dir, seconds, rows / seconds);
+	}
+
+	private long writeCustomers() throws IOException {
+		try (Writer out = open("customer.csv")){
+			for (int id = 0; id < this._customers; ++id){
+				this._line.setLength(0);
+				this._line.append(id).append(',').append(pick(FIRST_NAMES)).append(',').append(pick(LAST_NAMES)).append(",(");
+				digits(3).append(')');
+				digits(3).append('-');
+				digits(4).append(',').append(1 + nextInt(9999)).append(' ').append(pick(STREETS)).append(' ').append(pick(CITIES));
+				endLine(out);
+			}//end for
+		}
+		return this._customers;
+	}
+
+	private long writeMechanics() throws IOException {
+		try (Writer out = open("mechanic.csv")){
+			for (int id = 0; id < this._mechanics; ++id){
+				this._line.setLength(0);
+				this._line.append(id).append(',').append(pick(FIRST_NAMES)).append(',').append(pick(LAST_NAMES))
+					.append(',').append(nextInt(11));
+				endLine(out);
+			}//end for
+		}
+		return this._mechanics;
+	}
+
+	private long writeCarsAndOwners(int[] owner) throws IOException {
+		try (Writer cars = open("car.csv"); Writer owns = open("owns.csv")){
+			for (int i = 0; i < this._cars; ++i){
+				owner[i] = nextDouble() < SKEWED_OWNERSHIP ? spread(zipf(this._customers), this._customers, this._customerStride) : nextInt(this._customers);
+
+				this._line.setLength(0);
+				vin(i).append(',').append(pick(MAKES)).append(',').append(pick(MODELS)).append(',').append(1990 + nextInt(29));
+				endLine(cars);
+
+				this._line.setLength(0);
+				this._line.append(i).append(',').append(owner[i]).append(',');
+				vin(i);
+				endLine(owns);
+			}//end for
+		}
+		return 2L * this._cars;
+	}
+
+	private long writeRequests(int[] owner) throws IOException {
+		long closed = 0;
+		try (Writer requests = open("service_request.csv"); Writer closes = open("closed_request.csv")){
+			for (int rid = 0; rid < this._requests; ++rid){
+				int car = nextDouble() < SKEWED_SERVICE ? spread(zipf(this._cars), this._cars, this._carStride) : nextInt(this._cars);
+				long day = FIRST_DAY + nextInt(DAYS);
+
+				this._line.setLength(0);
+				this._line.append(rid).append(',').append(owner[car]).append(',');
+				vin(car).append(',');
+				date(day).append(',').append(1 + nextInt(230000)).append(',').append(pick(COMPLAINTS));
+				endLine(requests);
+
+				if (nextDouble() < CLOSED){
+					this._line.setLength(0);
+					this._line.append(closed).append(',').append(rid).append(',').append(nextInt(this._mechanics)).append(',');
+					date(day + nextInt(15)).append(',').append(pick(COMMENTS)).append(',').append(50 + nextInt(951));
+					endLine(closes);
+					++closed;
+				}//end if
+			}//end for
+		}
+		return this._requests + closed;
+	}
+
+	private Writer open(String name) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(this._dir, name)), StandardCharsets.UTF_8), 1 << 20);
+	}
+
+	private void endLine(Writer out) throws IOException {
+		this._line.append('\n');
+		int len = this._line.length();
+		if (this._chars.length < len) this._chars = new char[Math.max(len, this._chars.length * 2)];
+		this._line.getChars(0, len, this._chars, 0);
+		out.write(this._chars, 0, len);
+	}
+
+	/*
+	 * six letters and ten digits; the digits are a bijection of the car
+	 * index modulo 10^10, so VINs are unique without being stored
+	 */
+	private StringBuilder vin(int car){
+		long mixed = mix((car + 1L) * 0x9E3779B97F4A7C15L);
+		for (int i = 0; i < 6; ++i){
+			this._line.append((char) ('A' + (int) Long.remainderUnsigned(mixed, 26)));
+			mixed = Long.divideUnsigned(mixed, 26);
+		}//end for
+		long number = Math.floorMod(car * 3141592653L + 2718281828L, 10000000000L);
+		String digits = Long.toString(number);
+		for (int i = digits.length(); i < 10; ++i) this._line.append('0');
+		return this._line.append(digits);
+	}
+
+	private StringBuilder date(long epochDay){
+		LocalDate date = LocalDate.ofEpochDay(epochDay);
+		return this._line.append(date.getMonthValue()).append('/').append(date.getDayOfMonth()).append('/')
+			.append(date.getYear()).append(" 00:00");
+	}
+
+	private StringBuilder digits(int count){
+		for (int i = 0; i < count; ++i) this._line.append((char) ('0' + nextInt(10)));
+		return this._line;
+	}
+
+	private String pick(String[] values){
+		return values[nextInt(values.length)];
+	}
+
+	/*
+	 * rank in [0, n) with probability roughly proportional to 1 / (rank + 1)
+	 */
+	private int zipf(int n){
+		int rank = (int) Math.pow(n + 1, nextDouble()) - 1;
+		return Math.min(n - 1, Math.max(0, rank));
+	}
+
+	/*
+	 * scatters Zipf ranks over the id space so the heavy ids are not all at
+	 * the start of the file; a stride coprime to n makes this a permutation
+	 */
+	private static int spread(int rank, int n, long stride){
+		return (int) ((rank * stride + 13) % n);
+	}
+
+	private static long strideFor(int n){
+		long stride = 7919;
+		while (gcd(stride, n) != 1) stride += 2;
+		return stride;
+	}
+
+	private static long gcd(long a, long b){
+		while (b != 0){
+			long t = a % b;
+			a = b;
+			b = t;
+		}//end while
+		return a;
+	}
+
+	/*
+	 * SplitMix64, fixed here so the output does not depend on the JDK
+	 */
+	private long nextLong(){
+		this._state += 0x9E3779B97F4A7C15L;
+		return mix(this._state);
+	}
+
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private int nextInt(int bound){
+		return (int) Long.remainderUnsigned(nextLong(), bound);
+	}
+
+	private double nextDouble(){
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * This class moves the requests closed more than a given number of days ago,
+ * with their service requests, from Closed_Request and Service_Request to
+ * the append-only archive tables of create.sql.  Each batch is moved by
+ * archive_closed_history in a transaction of its own, so intake and closing
+ * are held up by one batch at most.  The hot tables are vacuumed afterwards
+ * so their pages and indexes are reused by new requests.
+ *
+ * Reports 6-10 read the archive together with the hot tables, so their
+ * results do not change.
+ *
+ */
+
+public class HistoryArchiver{
+	static final String ARCHIVE_BATCH = "SELECT archive_closed_history(?::date, ?)";
+
+	private final MechanicShop _esql;
+	private final int _batchSize;
+
+	public HistoryArchiver(MechanicShop esql, int batchSize){
+		this._esql = esql;
+		this._batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Method to archive the requests closed before the cutoff and print how
+	 * many were moved.
+	 *
+	 * @param ageDays requests closed this many days ago or earlier are moved
+	 * @return the number of requests moved
+	 * @throws java.sql.SQLException when a batch failed; the batches before
+	 *         it stay archived
+	 */
+	public long archive(int ageDays) throws SQLException {
+		if (ageDays < 0) throw new IllegalArgumentException("The age must not be negative");
+		LocalDate cutoff = LocalDate.now().minusDays(ageDays);
+		long start = System.nanoTime();
+		long moved = 0;
+		int batches = 0;
+		while (true){
+			long n = this._esql.executeQueryForLong(0, ARCHIVE_BATCH, java.sql.Date.valueOf(cutoff), this._batchSize);
+			moved += n;
+			++batches;
+			if (n < this._batchSize) break;
+		}//end while
+		long archived = System.nanoTime();
+		if (moved > 0){
+			this._esql.executeUpdate("VACUUM (ANALYZE) Closed_Request");
+			this._esql.executeUpdate("VACUUM (ANALYZE) Service_Request");
+		}//end if
+		long end = System.nanoTime();
+		System.out.printf("ARCHIVE SUMMARY: %d request(s) closed before %s moved in %d batch(es), %.1f ms, %.0f requests/s; vacuum %.1f ms%n",
+			moved, cutoff, batches, (archived - start) / 1e6, moved / ((archived - start) / 1e9), (end - archived) / 1e6);
+		return moved;
+	}
+}
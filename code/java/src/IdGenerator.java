@@ -0,0 +1,75 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class hands out primary keys from PostgreSQL sequences in blocks
+ * (hi/lo). Each sequence is created with INCREMENT BY n, so one nextval call
+ * reserves the n ids [v, v+n) for this process; they are then handed out
+ * from memory and the database is only contacted once per block. Ids are
+ * unique across processes, but may have gaps when a process exits with part
+ * of a block unused.
+ *
+ */
+
+public class IdGenerator{
+	//sequences defined in code/sql/create.sql
+	public static final String SERVICE_REQUEST_RID = "Service_Request_rid_seq";
+	public static final String OWNS_OWNERSHIP_ID = "Owns_ownership_id_seq";
+	public static final String CLOSED_REQUEST_WID = "Closed_Request_wid_seq";
+
+	/*
+	 * the block currently reserved for one sequence
+	 */
+	private static class Block{
+		private long _next = 0;
+		private long _end = 0;
+	}
+
+	private final MechanicShop _esql;
+	private final ConcurrentHashMap<String, Block> _blocks = new ConcurrentHashMap<String, Block>();
+
+	public IdGenerator(MechanicShop esql){
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to take the next id of a sequence, reserving a new block from
+	 * the database when the current one is used up.
+	 *
+	 * @param sequence name of the DB sequence
+	 * @return an id no other caller or process will receive
+	 * @throws java.sql.SQLException when a new block could not be reserved
+	 */
+	public int next(String sequence) throws SQLException {
+		Block block = this._blocks.computeIfAbsent(sequence, k -> new Block());
+		synchronized (block){
+			if (block._next >= block._end){
+				// nextval returns the first id of the block and the increment is
+				// its size, both read in one round trip
+				final long[] reserved = new long[2];
+				int found = this._esql.executeQueryForEach(row -> {
+					reserved[0] = row.getLong(1);
+					reserved[1] = row.getLong(2);
+				}, "SELECT nextval(?::regclass), seqincrement FROM pg_sequence WHERE seqrelid = ?::regclass", sequence, sequence);
+				if (found == 0)
+					throw new SQLException("Sequence " + sequence + " does not exist");
+				block._next = reserved[0];
+				block._end = reserved[0] + reserved[1];
+			}//end if
+			return Math.toIntExact(block._next++);
+		}
+	}//end next
+}
@@ -0,0 +1,466 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class takes service requests off the clerk's path.  submit issues
+ * the rid at once, appends the request to a local journal, forces it to
+ * disk and queues it; a background writer inserts whatever is queued in one
+ * transaction per batch (group commit).  At most capacity requests may be
+ * waiting, after which submit blocks (backpressure) and finally fails.
+ *
+ * The journal holds every request that may not be committed yet, one per
+ * line.  It is emptied whenever the queue has drained, and replayed when the
+ * queue is opened again, so requests queued when the process died are
+ * inserted on the next start.  Inserts ignore rids already present, which
+ * makes the replay safe to repeat; requests found already written are
+ * counted as already applied.  The replay gives up, keeping the journal,
+ * when the database stays unreachable for mechanicshop.intake.replayAttempts
+ * tries.  MechanicShop.openServiceRequest refuses a car the customer does
+ * not own before submitting; should the ownership be gone by the time the
+ * request is written, the writer drops it and reports it on standard error.
+ *
+ * Queued requests are not visible to reports until they are written;
+ * flush waits for that.
+ *
+ */
+
+public class IntakeQueue{
+	//same as INSERT_SERVICE_REQUEST, but dated at submit time and safe to
+	//repeat; no row is inserted for a car the customer does not own
+	static final String INSERT_QUEUED_REQUEST = "INSERT INTO Service_Request(rid, customer_id, car_vin, date, odometer, complain) "
+		+ "SELECT ?, customer_id, car_vin, ?, ?, ? FROM Owns WHERE customer_id = ? AND car_vin = ? LIMIT 1 ON CONFLICT (rid) DO NOTHING";
+	//the request was written before, possibly archived since
+	static final String COUNT_WRITTEN = "SELECT COUNT(*) FROM Service_Request_History WHERE rid = ?";
+	//tries of a replayed batch while the database is unreachable, 1 s apart
+	private static final int REPLAY_ATTEMPTS = Integer.getInteger("mechanicshop.intake.replayAttempts", 10);
+
+	/*
+	 * one queued service request
+	 */
+	private static class Intake{
+		private final int _rid;
+		private final int _customerId;
+		private final String _vin;
+		private final int _odometer;
+		private final LocalDate _date;
+		private final String _complaint;
+
+		Intake(int rid, int customerId, String vin, int odometer, LocalDate date, String complaint){
+			this._rid = rid;
+			this._customerId = customerId;
+			this._vin = vin;
+			this._odometer = odometer;
+			this._date = date;
+			this._complaint = complaint;
+		}
+
+		Object[] params(){
+			return new Object[]{ this._rid, java.sql.Date.valueOf(this._date), this._odometer, this._complaint, this._customerId, this._vin };
+		}
+	}
+
+	private final MechanicShop _esql;
+	private final Path _journalPath;
+	private final FileChannel _journal;
+	private final int _batchSize;
+	private final long _submitTimeoutMillis;
+	//one permit per request that may be waiting to be written
+	private final Semaphore _slots;
+	private final LinkedBlockingQueue<Intake> _queue = new LinkedBlockingQueue<Intake>();
+	private final Thread _writer;
+	private volatile boolean _closing = false;
+
+	//journal lines appended and forced, under _journalLock / _forceLock
+	private final Object _journalLock = new Object();
+	private final Object _forceLock = new Object();
+	private long _appended = 0;
+	private long _forced = 0;
+	//requests journaled and written (or dropped), under this
+	private long _submitted = 0;
+	private long _done = 0;
+	private long _rejected = 0;
+	private long _batches = 0;
+	//requests found already written, by the replay or the writer
+	private long _alreadyApplied = 0;
+
+	/**
+	 * Method to open the queue: replays the journal left by an earlier run,
+	 * then starts the writer.
+	 *
+	 * @param esql the database the requests are written to
+	 * @param journal the journal file, created when missing
+	 * @param capacity requests that may wait before submit blocks
+	 * @param batchSize most requests written per transaction
+	 * @param submitTimeoutMillis how long submit waits for room
+	 * @throws java.sql.SQLException when the journal could not be replayed;
+	 *         it is kept for the next start
+	 * @throws java.io.IOException when the journal could not be opened
+	 */
+	public IntakeQueue(MechanicShop esql, Path journal, int capacity, int batchSize, long submitTimeoutMillis) throws SQLException, IOException {
+		this._esql = esql;
+		this._journalPath = journal;
+		this._batchSize = Math.max(1, batchSize);
+		this._submitTimeoutMillis = submitTimeoutMillis;
+		this._slots = new Semaphore(Math.max(1, capacity));
+		replay();
+		this._journal = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this._journal.truncate(0);
+		this._writer = new Thread(this::writeLoop, "intake-writer");
+		this._writer.setDaemon(true);
+		this._writer.start();
+	}
+
+	/**
+	 * Method to queue a service request dated today.  It returns once the
+	 * request is in the journal on disk, before it is in the database.
+	 *
+	 * @return the rid of the request
+	 * @throws java.sql.SQLException when the queue stayed full, is closed, or
+	 *         the journal could not be written
+	 */
+	public int submit(int customerId, String vin, int odometer, String complaint) throws SQLException {
+		if (this._closing) throw new SQLException("The intake queue is closed");
+		try{
+			if (!this._slots.tryAcquire(this._submitTimeoutMillis, TimeUnit.MILLISECONDS))
+				throw new SQLException("The intake queue is full, try again later");
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for the intake queue");
+		}//end try
+		long line = 0;
+		try{
+			Intake intake = new Intake(this._esql.getNextSeqVal(IdGenerator.SERVICE_REQUEST_RID), customerId, vin.trim(), odometer, LocalDate.now(), complaint);
+			line = append(intake);
+			force(line);
+			this._queue.add(intake);
+			return intake._rid;
+		}catch (SQLException | IOException | RuntimeException e){
+			this._slots.release();
+			if (line > 0){
+				// journaled but never queued, counted as done so the journal
+				// can still be emptied
+				synchronized (this){
+					++this._done;
+					++this._rejected;
+					notifyAll();
+				}
+			}//end if
+			if (e instanceof SQLException) throw (SQLException) e;
+			throw new SQLException("Unable to journal the service request: " + e.getMessage(), e);
+		}//end try
+	}//end submit
+
+	/**
+	 * Method to wait until every request submitted so far is written.
+	 *
+	 * @param timeoutMillis the longest wait
+	 * @return true when all of them were written in time
+	 */
+	public synchronized boolean flush(long timeoutMillis){
+		long target = this._submitted;
+		long end = System.currentTimeMillis() + timeoutMillis;
+		try{
+			while (this._done < target){
+				long left = end - System.currentTimeMillis();
+				if (left <= 0) return false;
+				wait(left);
+			}//end while
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}//end try
+		return true;
+	}
+
+	/**
+	 * Method to stop taking requests, write the queued ones and stop the
+	 * writer.  Requests still unwritten after the timeout stay in the
+	 * journal for the next start.
+	 *
+	 * @param timeoutMillis the longest wait for the queue to drain
+	 */
+	public void close(long timeoutMillis){
+		this._closing = true;
+		if (!flush(timeoutMillis))
+			System.err.println("Intake queue not drained, the journal " + this._journalPath + " will be replayed on the next start");
+		this._writer.interrupt();
+		try{
+			this._writer.join(timeoutMillis);
+			this._journal.close();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}catch (IOException e){
+			// ignored.
+		}//end try
+	}
+
+	public synchronized String getStats(){
+		return String.format("intake queue          : %d waiting, %d submitted, %d written in %d batches, %d already applied, %d rejected",
+			this._submitted - this._done, this._submitted, this._done - this._rejected, this._batches, this._alreadyApplied, this._rejected);
+	}
+
+	/*
+	 * takes whatever is queued, up to a batch, and writes it
+	 */
+	private void writeLoop(){
+		List<Intake> batch = new ArrayList<Intake>(this._batchSize);
+		while (true){
+			try{
+				Intake first = this._queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null){
+					if (this._closing && this._queue.isEmpty()) return;
+					continue;
+				}//end if
+				batch.add(first);
+				this._queue.drainTo(batch, this._batchSize - 1);
+			}catch (InterruptedException e){
+				// close interrupts only once the queue is drained or given up on
+				return;
+			}//end try
+			int rejected = write(batch, 0);
+			if (rejected < 0) return; // interrupted while retrying
+			this._slots.release(batch.size());
+			synchronized (this){
+				this._done += batch.size();
+				this._rejected += rejected;
+				++this._batches;
+				notifyAll();
+			}
+			batch.clear();
+			truncateIfDrained();
+		}//end while
+	}//end writeLoop
+
+	/*
+	 * writes the batch in one transaction, retrying while the database is
+	 * unreachable, at most attempts times unless 0; when a row fails the rows
+	 * are written one by one, with the same retries, so only the rows with
+	 * bad data are dropped.  Returns the rows dropped, or -1 when interrupted
+	 * or out of attempts before the batch could be written.
+	 */
+	private int write(List<Intake> batch, int attempts){
+		List<Object[]> rows = new ArrayList<Object[]>(batch.size());
+		for (Intake intake : batch) rows.add(intake.params());
+		for (int attempt = 1; ; ++attempt){
+			try{
+				this._esql.beginTransaction();
+				int[] counts = this._esql.executeBatch(INSERT_QUEUED_REQUEST, rows);
+				this._esql.commit();
+				int rejected = 0;
+				for (int i = 0; i < counts.length; ++i)
+					if (counts[i] == 0 && !written(batch.get(i))) ++rejected;
+				return rejected;
+			}catch (SQLException e){
+				this._esql.rollback();
+				if (!isConnectionFailure(e)) break;
+				if (!retry(e, attempt, attempts)) return -1;
+			}//end try
+		}//end for
+
+		int rejected = 0;
+		for (int i = 0; i < batch.size(); ++i){
+			for (int attempt = 1; ; ++attempt){
+				try{
+					if (this._esql.executeUpdate(INSERT_QUEUED_REQUEST, rows.get(i)) == 0 && !written(batch.get(i))) ++rejected;
+					break;
+				}catch (SQLException e){
+					// the journal keeps the request unless it is really bad
+					if (isConnectionFailure(e)){
+						if (!retry(e, attempt, attempts)) return -1;
+						continue;
+					}//end if
+					reject(batch.get(i), e.getMessage());
+					++rejected;
+					break;
+				}//end try
+			}//end for
+		}//end for
+		return rejected;
+	}//end write
+
+	/*
+	 * waits before the next attempt; false when interrupted or out of
+	 * attempts
+	 */
+	private static boolean retry(SQLException e, int attempt, int attempts){
+		if (attempts > 0 && attempt >= attempts){
+			System.err.println("Intake writer: " + e.getMessage() + ", giving up after " + attempt + " attempt(s)");
+			return false;
+		}//end if
+		System.err.println("Intake writer: " + e.getMessage() + ", retrying");
+		try{
+			Thread.sleep(1000);
+		}catch (InterruptedException ie){
+			return false;
+		}//end try
+		return true;
+	}
+
+	/*
+	 * tells a request inserted by an earlier attempt, which is counted as
+	 * already applied, from one that was dropped, which is reported
+	 */
+	private boolean written(Intake intake) throws SQLException {
+		if (this._esql.executeQueryForLong(0, COUNT_WRITTEN, intake._rid) > 0){
+			synchronized (this){
+				++this._alreadyApplied;
+			}
+			return true;
+		}//end if
+		reject(intake, "customer does not own the car");
+		return false;
+	}
+
+	private static void reject(Intake intake, String reason){
+		System.err.println("Intake of service request " + intake._rid + " (customer " + intake._customerId + ", car " + intake._vin + ") dropped: " + reason);
+	}
+
+	/*
+	 * lost or refused connections, server shutdown, and client side
+	 * failures such as a pool timeout (no SQLState) are worth retrying
+	 */
+	private static boolean isConnectionFailure(SQLException e){
+		String state = e.getSQLState();
+		return state == null || state.startsWith("08") || state.startsWith("57P");
+	}
+
+	/*
+	 * appends the request to the journal and returns its line number
+	 */
+	private long append(Intake intake) throws IOException {
+		StringBuilder line = new StringBuilder(64 + intake._complaint.length());
+		line.append(intake._rid).append('\t').append(intake._customerId).append('\t');
+		escape(line, intake._vin).append('\t').append(intake._odometer).append('\t').append(intake._date).append('\t');
+		escape(line, intake._complaint).append('\n');
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(line.toString());
+		synchronized (this._journalLock){
+			while (bytes.hasRemaining()) this._journal.write(bytes);
+			synchronized (this){
+				++this._submitted;
+			}
+			return ++this._appended;
+		}
+	}
+
+	/*
+	 * forces the journal to disk up to the given line; one caller forces
+	 * for every line appended before it (group fsync)
+	 */
+	private void force(long line) throws IOException {
+		synchronized (this._forceLock){
+			if (this._forced >= line) return;
+			long target;
+			synchronized (this._journalLock){
+				target = this._appended;
+			}
+			this._journal.force(false);
+			this._forced = target;
+		}
+	}
+
+	/*
+	 * empties the journal once every line in it has been written
+	 */
+	private void truncateIfDrained(){
+		synchronized (this._journalLock){
+			synchronized (this){
+				if (this._done != this._submitted) return;
+			}
+			try{
+				this._journal.truncate(0);
+			}catch (IOException e){
+				System.err.println("Unable to truncate the intake journal: " + e.getMessage());
+			}//end try
+		}
+	}
+
+	/*
+	 * writes the requests of a journal left by an earlier run
+	 */
+	private void replay() throws SQLException, IOException {
+		if (!Files.exists(this._journalPath)) return;
+		List<Intake> pending = new ArrayList<Intake>();
+		try (BufferedReader in = Files.newBufferedReader(this._journalPath, StandardCharsets.UTF_8)){
+			String line;
+			while ((line = in.readLine()) != null){
+				String[] f = line.split("\t", -1);
+				// a line torn by a crash was never acknowledged
+				if (f.length != 6) continue;
+				try{
+					pending.add(new Intake(Integer.parseInt(f[0]), Integer.parseInt(f[1]), unescape(f[2]),
+						Integer.parseInt(f[3]), LocalDate.parse(f[4]), unescape(f[5])));
+				}catch (RuntimeException e){
+					continue;
+				}//end try
+			}//end while
+		}
+		if (pending.isEmpty()) return;
+		System.out.println("Replaying " + pending.size() + " queued service request(s) from " + this._journalPath);
+		long dropped = 0;
+		for (int i = 0; i < pending.size(); i += this._batchSize){
+			int rejected = write(pending.subList(i, Math.min(pending.size(), i + this._batchSize)), REPLAY_ATTEMPTS);
+			if (rejected < 0) throw new SQLException("Unable to replay the intake journal " + this._journalPath + ", it is kept for the next start");
+			dropped += rejected;
+		}//end for
+		long applied;
+		synchronized (this){
+			applied = this._alreadyApplied;
+		}
+		System.out.println("Replayed " + (pending.size() - applied - dropped) + " request(s), " + applied + " already applied, " + dropped + " dropped");
+	}
+
+	private static StringBuilder escape(StringBuilder out, String value){
+		for (int i = 0; i < value.length(); ++i){
+			char c = value.charAt(i);
+			switch (c){
+				case '\\': out.append("\\\\"); break;
+				case '\t': out.append("\\t"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				default: out.append(c);
+			}
+		}//end for
+		return out;
+	}
+
+	private static String unescape(String value){
+		if (value.indexOf('\\') < 0) return value;
+		StringBuilder out = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); ++i){
+			char c = value.charAt(i);
+			if (c != '\\' || i + 1 == value.length()){
+				out.append(c);
+				continue;
+			}//end if
+			char e = value.charAt(++i);
+			out.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+		}//end for
+		return out.toString();
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is a bounded read-through cache of query results.  Entries are
+ * kept in least-recently-used order up to the capacity and expire after a
+ * time to live.  Writers call invalidate after changing the rows an entry was
+ * read from.  A value loaded while an invalidation happened is returned to
+ * its caller but not cached, so a slow reader cannot put back rows that were
+ * already stale.
+ *
+ */
+
+public class LookupCache<K, V>{
+
+	/*
+	 * loads the value of a key on a miss
+	 */
+	public interface Loader<K, V>{
+		V load(K key) throws SQLException;
+	}
+
+	private static class Entry<V>{
+		private final V _value;
+		private final long _expires;
+
+		Entry(V value, long expires){
+			this._value = value;
+			this._expires = expires;
+		}
+	}
+
+	private final String _name;
+	private final int _capacity;
+	private final long _ttlMillis;
+	//access ordered map, the eldest entry is the least recently used one
+	private final LinkedHashMap<K, Entry<V>> _entries;
+	//bumped by every invalidation
+	private long _epoch = 0;
+	private long _hits = 0;
+	private long _misses = 0;
+	private long _invalidations = 0;
+
+	public LookupCache(String name, int capacity, long ttlMillis){
+		this._name = name;
+		this._capacity = Math.max(1, capacity);
+		this._ttlMillis = ttlMillis;
+		this._entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest){
+				return size() > _capacity;
+			}
+		};
+	}
+
+	/**
+	 * Method to return the cached value of the key, loading and caching it
+	 * when it is missing or expired.
+	 *
+	 * @param key the lookup key
+	 * @param loader reads the value from the database on a miss
+	 * @return the value, shared with other callers and not to be modified
+	 * @throws java.sql.SQLException when the loader failed; nothing is cached
+	 */
+	public V get(K key, Loader<K, V> loader) throws SQLException {
+		long epoch;
+		synchronized (this){
+			Entry<V> entry = this._entries.get(key);
+			if (entry != null && entry._expires > System.currentTimeMillis()){
+				++this._hits;
+				return entry._value;
+			}//end if
+			if (entry != null) this._entries.remove(key);
+			++this._misses;
+			epoch = this._epoch;
+		}
+		// the query runs outside the lock so other keys are not blocked
+		V value = loader.load(key);
+		synchronized (this){
+			if (this._epoch == epoch)
+				this._entries.put(key, new Entry<V>(value, System.currentTimeMillis() + this._ttlMillis));
+		}
+		return value;
+	}//end get
+
+	/**
+	 * Method to drop the entry of the key after its rows changed.
+	 *
+	 * @param key the lookup key
+	 */
+	public synchronized void invalidate(K key){
+		++this._epoch;
+		++this._invalidations;
+		this._entries.remove(key);
+	}
+
+	public synchronized void clear(){
+		++this._epoch;
+		this._entries.clear();
+	}
+
+	public synchronized String getStats(){
+		return String.format("%-22s: %d/%d entries, %d hits, %d misses, %d invalidations",
+			this._name, this._entries.size(), this._capacity, this._hits, this._misses, this._invalidations);
+	}
+}
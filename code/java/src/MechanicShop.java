@@ -11,18 +11,32 @@
  */
 
 
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.postgresql.PGConnection;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -31,9 +45,83 @@ import java.util.ArrayList;
  */
 
 public class MechanicShop{
-	//reference to physical database connection
-	private Connection _connection = null;
+	//pool of physical database connections shared by every session
+	private ConnectionPool _pool = null;
+	//connection pinned to the calling thread while it runs a transaction
+	private final ThreadLocal<ConnectionPool.PooledConnection> _transaction = new ThreadLocal<ConnectionPool.PooledConnection>();
+	//block allocator for rid, ownership_id and wid
+	private final IdGenerator _ids = new IdGenerator(this);
+	//customers by last name and the cars of each customer, for InsertServiceRequest
+	private final LookupCache<String, ColumnarResult> _customersByLastName = new LookupCache<String, ColumnarResult>("customers by last name",
+		Integer.getInteger("mechanicshop.lookupcache.size", 1024), Long.getLong("mechanicshop.lookupcache.ttlMs", 300000L));
+	private final LookupCache<Integer, ColumnarResult> _carsByCustomer = new LookupCache<Integer, ColumnarResult>("cars by customer",
+		Integer.getInteger("mechanicshop.lookupcache.size", 1024), Long.getLong("mechanicshop.lookupcache.ttlMs", 300000L));
+	//change events of other instances and clients, null unless listening is enabled
+	private ChangeListener _changes = null;
+	//write-behind queue of InsertServiceRequest, null unless a journal is configured
+	private IntakeQueue _intake = null;
+	//end (System.nanoTime) of the request the thread is serving, 0 when unbounded
+	private final ThreadLocal<long[]> _deadline = ThreadLocal.withInitial(() -> new long[1]);
+	//statement timeout of each operation in ms, from mechanicshop.timeout.<operation>Ms
+	private final Map<String, Long> _timeouts = new ConcurrentHashMap<String, Long>();
+	//rows fetched per round trip when streaming a result
+	private int _fetchSize = Integer.getInteger("mechanicshop.fetchSize", 1000);
+	//latency, rows, bytes and errors of every statement
+	private final QueryMetrics _metrics = new QueryMetrics();
+	//format of executeQueryAndPrintResult
+	private volatile ResultRenderer.Format _outputFormat = ResultRenderer.Format.parse(System.getProperty("mechanicshop.output.format", "tsv"));
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+	//statements of the write operations, shared by the menu and batch mode
+	static final String INSERT_CUSTOMER = "INSERT INTO Customer(id, fname, lname, phone, address) VALUES (?, ?, ?, ?, ?)";
+	static final String INSERT_MECHANIC = "INSERT INTO Mechanic(id, fname, lname, experience) VALUES (?, ?, ?, ?)";
+	static final String INSERT_CAR = "INSERT INTO Car(vin, make, model, year) VALUES (?, ?, ?, ?)";
+	static final String INSERT_OWNS = "INSERT INTO Owns(ownership_id, customer_id, car_vin) VALUES (?, ?, ?)";
+	//INTAKE_OWNED_CAR without RETURNING, so it can be batched: no row is
+	//inserted for a car the customer does not own
+	static final String INSERT_SERVICE_REQUEST = "INSERT INTO Service_Request(rid, customer_id, car_vin, date, odometer, complain) "
+		+ "SELECT ?, customer_id, car_vin, CURRENT_DATE, ?, ? FROM Owns WHERE customer_id = ? AND car_vin = ? LIMIT 1";
+	static final String INSERT_CLOSED_REQUEST = "INSERT INTO Closed_Request(wid, rid, mid, date, comment, bill) VALUES (?, ?, ?, ?, ?, ?)";
+	//service request intake, one statement each: for a car the customer
+	//owns (no row when they do not), and for a new car with its Owns row
+	static final String INTAKE_OWNED_CAR = "INSERT INTO Service_Request(rid, customer_id, car_vin, date, odometer, complain) "
+		+ "SELECT ?, customer_id, car_vin, CURRENT_DATE, ?, ? FROM Owns WHERE customer_id = ? AND car_vin = ? LIMIT 1 RETURNING rid";
+	static final String INTAKE_NEW_CAR = "WITH new_car AS (INSERT INTO Car(vin, make, model, year) VALUES (?, ?, ?, ?) RETURNING vin), "
+		+ "new_owner AS (INSERT INTO Owns(ownership_id, customer_id, car_vin) SELECT ?, ?, vin FROM new_car RETURNING customer_id, car_vin) "
+		+ "INSERT INTO Service_Request(rid, customer_id, car_vin, date, odometer, complain) "
+		+ "SELECT ?, customer_id, car_vin, CURRENT_DATE, ?, ? FROM new_owner RETURNING rid";
+	//closing, one statement each: for a single request (no row when the
+	//request or mechanic does not exist, the request is already closed or
+	//the date is before it was opened), and for many requests given as
+	//arrays, returning the rids that were closed
+	static final String CLOSE_REQUEST = "INSERT INTO Closed_Request(wid, rid, mid, date, comment, bill) "
+		+ "SELECT ?, SR.rid, M.id, ?::date, ?, ? FROM Service_Request AS SR, Mechanic AS M "
+		+ "WHERE SR.rid = ? AND M.id = ? AND SR.date <= ?::date ON CONFLICT (rid) DO NOTHING RETURNING wid";
+	static final String CLOSE_REQUESTS = "INSERT INTO Closed_Request(wid, rid, mid, date, comment, bill) "
+		+ "SELECT T.wid, T.rid, T.mid, T.date, T.comment, T.bill "
+		+ "FROM unnest(?::int[], ?::int[], ?::int[], ?::date[], ?::text[], ?::int[]) AS T(wid, rid, mid, date, comment, bill), "
+		+ "Service_Request AS SR, Mechanic AS M "
+		+ "WHERE SR.rid = T.rid AND M.id = T.mid AND SR.date <= T.date ON CONFLICT (rid) DO NOTHING RETURNING rid";
+	//why a close inserted nothing, only run after it did; an archived
+	//request counts as closed
+	static final String CLOSE_REQUEST_DIAGNOSIS = "SELECT (SELECT date FROM Service_Request_History WHERE rid = ?), "
+		+ "EXISTS (SELECT 1 FROM Mechanic WHERE id = ?), EXISTS (SELECT 1 FROM Closed_Request_History WHERE rid = ?)";
+	//lookups of InsertServiceRequest; the cars are numbered by vin and the
+	//first two columns are the ones shown
+	static final String FIND_CUSTOMERS_BY_LAST_NAME = "SELECT * FROM Customer WHERE lname = ?";
+	//customer search: the full name contains the text or has a word like it
+	//(pg_trgm <%), or the phone contains its digits; names starting with the
+	//text come first, then the closest; the expressions are those of the
+	//trigram indexes in create.sql
+	static final String SEARCH_CUSTOMERS = "SELECT C.* FROM Customer AS C "
+		+ "WHERE lower(rtrim(C.fname) || ' ' || rtrim(C.lname)) LIKE ? OR ? <% lower(rtrim(C.fname) || ' ' || rtrim(C.lname)) "
+		+ "OR regexp_replace(C.phone, '[^0-9]', '', 'g') LIKE ?::text "
+		+ "ORDER BY (lower(rtrim(C.fname) || ' ' || rtrim(C.lname)) LIKE ? OR lower(rtrim(C.fname) || ' ' || rtrim(C.lname)) LIKE ?) DESC, "
+		+ "GREATEST(word_similarity(?, lower(rtrim(C.fname) || ' ' || rtrim(C.lname))), (regexp_replace(C.phone, '[^0-9]', '', 'g') LIKE ?::text)::int) DESC, "
+		+ "C.lname, C.fname, C.id LIMIT ?";
+	static final String FIND_CARS_OF_CUSTOMER = "SELECT Row_Number() OVER ( ORDER BY Owns.car_vin ), Car, Car.vin, Car.make, Car.model, Car.year FROM Owns, Car WHERE Car.vin = Owns.car_vin AND Owns.customer_id = ? ORDER BY Owns.car_vin";
+	//query results are written to standard out through one large buffer
+	static final Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
 	
 	public MechanicShop(String dbname, String dbport, String user, String passwd) throws SQLException {
 		System.out.print("Connecting to database...");
@@ -42,75 +130,352 @@ public class MechanicShop{
 			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
 			System.out.println ("Connection URL: " + url + "\n");
 			
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
+			// prepare on the server from the first execution so cached
+			// statements reuse their plan
+			Properties props = new Properties();
+			props.setProperty("user", user);
+			props.setProperty("password", passwd);
+			props.setProperty("prepareThreshold", "1");
+			// sends a JDBC batch of inserts as multi-row INSERT statements
+			props.setProperty("reWriteBatchedInserts", "true");
+
+			// obtain the pool of physical connections
+	        this._pool = new ConnectionPool(url, props,
+	        	Integer.getInteger("mechanicshop.pool.min", 1),
+	        	Integer.getInteger("mechanicshop.pool.max", 8),
+	        	Long.getLong("mechanicshop.pool.acquireTimeoutMs", 30000L),
+	        	Long.getLong("mechanicshop.pool.idleTimeoutMs", 300000L),
+	        	Long.getLong("mechanicshop.pool.validateAfterMs", 5000L),
+	        	Integer.getInteger("mechanicshop.stmtcache.size", 64));
+
+	        // exports the query metrics for scraping when a file is given
+	        String metricsFile = System.getProperty("mechanicshop.metrics.file");
+	        if (metricsFile != null)
+	        	this._metrics.startExport(metricsFile, Long.getLong("mechanicshop.metrics.intervalMs", 15000L));
+
+	        // drops cached lookups when any instance writes their rows
+	        if (Boolean.getBoolean("mechanicshop.changes.listen")){
+	        	this._changes = new ChangeListener(url, props, Long.getLong("mechanicshop.changes.pollMs", 1000L));
+	        	this._changes.subscribe("customer", (table, op, keys) -> invalidate(this._customersByLastName, keys, key -> key));
+	        	this._changes.subscribe("owns", (table, op, keys) -> invalidate(this._carsByCustomer, keys, Integer::valueOf));
+	        	// a new car has no owner yet, so only other changes can be cached
+	        	this._changes.subscribe("car", (table, op, keys) -> {
+	        		if (op != 'I') this._carsByCustomer.clear();
+	        	});
+	        }//end if
 	        System.out.println("Done");
 		}catch(Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
 	        System.out.println("Make sure you started postgres on this machine");
 	        System.exit(-1);
 		}
+
+		// service requests are written behind when a journal is configured;
+		// requests left in it by an earlier run are written first
+		String journal = System.getProperty("mechanicshop.intake.journal");
+		if (journal != null){
+			try{
+				this._intake = new IntakeQueue(this, Paths.get(journal),
+					Integer.getInteger("mechanicshop.intake.capacity", 10000),
+					Integer.getInteger("mechanicshop.intake.batchSize", 500),
+					Long.getLong("mechanicshop.intake.submitTimeoutMs", 5000L));
+			}catch (IOException e){
+				throw new SQLException("Unable to open the intake journal " + journal + ": " + e.getMessage(), e);
+			}//end try
+		}//end if
 	}
 	
 	/**
 	 * Method to execute an update SQL statement.  Update SQL instructions
-	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.  The statement is
+	 * taken from the prepared statement cache, so '?' placeholders in the SQL
+	 * are bound, in order, to the given parameters and the server-side plan
+	 * is reused across calls with the same SQL.
 	 * 
 	 * @param sql the input SQL string
+	 * @param params the values bound to the '?' placeholders
+	 * @return the number of rows affected
 	 * @throws java.sql.SQLException when update failed
 	 * */
-	public void executeUpdate (String sql) throws SQLException { 
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		// issues the update instruction
-		stmt.executeUpdate (sql);
+	public int executeUpdate (String sql, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		// borrows a connection unless the thread is inside a transaction
+		ConnectionPool.PooledConnection pc = acquire ();
+		try{
+			// fetches the cached statement and binds the parameters
+			PreparedStatement stmt = prepare (pc, QueryMetrics.UPDATE, sql, params);
 
-		// close the instruction
-	    stmt.close ();
+			// issues the update instruction
+			rowCount = stmt.executeUpdate ();
+			return rowCount;
+		}finally{
+			release (pc);
+			this._metrics.record (QueryMetrics.UPDATE, sql, start, rowCount, 0);
+		}
 	}//end executeUpdate
 
+	/**
+	 * Method to execute a statement whose SQL differs on every call, such as
+	 * a SET with a literal value, on a plain statement that bypasses the
+	 * prepared statement cache, so it does not take a cache slot.
+	 * 
+	 * @param sql the input SQL string, without placeholders
+	 * @return the number of rows affected
+	 * @throws java.sql.SQLException when update failed
+	 */
+	public int executeUncached (String sql) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		ConnectionPool.PooledConnection pc = acquire ();
+		try (Statement stmt = pc.getConnection().createStatement ()){
+			applyDeadline (stmt, QueryMetrics.UPDATE);
+			rowCount = stmt.executeUpdate (sql);
+			return rowCount;
+		}finally{
+			release (pc);
+			this._metrics.record (QueryMetrics.UPDATE, sql, start, rowCount, 0);
+		}
+	}//end executeUncached
+
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and outputs the results to
-	 * standard out.
+	 * standard out in the current output format.
 	 * 
 	 * @param query the input query string
+	 * @param params the values bound to the '?' placeholders
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+		return render (QueryMetrics.PRINT, getConsoleRenderer (), null, query, params);
+	}
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * stream the results through the given renderer.  Rows are read through
+	 * a server-side cursor, fetchSize rows per round trip, so memory use does
+	 * not grow with the size of the result.
+	 * 
+	 * @param renderer the format and destination of the rows
+	 * @param query the input query string
+	 * @param params the values bound to the '?' placeholders
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query or to
+	 *         write its result
+	 */
+	public int executeQueryAndRenderResult (ResultRenderer renderer, String query, Object... params) throws SQLException {
+		return render (QueryMetrics.RENDER, renderer, null, query, params);
+	}
 
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+	/*
+	 * streams the rows to the renderer within the limits of the guard; without
+	 * one, the configured limits apply and a partial result is reported on
+	 * standard error
+	 */
+	private int render (String operation, ResultRenderer renderer, QueryGuard guard, String query, Object[] params) throws SQLException {
+		long start = System.nanoTime ();
+		long chars = renderer.getValueChars ();
+		int rowCount = -1;
+		QueryGuard g = guard == null ? QueryGuard.fromProperties () : guard;
+		try{
+			rowCount = executeWithCursor (operation, rs -> renderer.render (rs, g), g, query, params);
+			if (guard == null && g.getStopReason () != null)
+				System.err.println ("Result stopped after " + rowCount + " row(s): " + g.getStopReason ());
+			return rowCount;
+		}catch (SQLException e){
+			// cancelled midway: the rows rendered so far are the result
+			if (!g.stoppedByCancel (e)) throw e;
+			rowCount = (int) g.getRows ();
+			if (guard == null)
+				System.err.println ("Result stopped after " + rowCount + " row(s): " + g.getStopReason ());
+			return rowCount;
+		}finally{
+			this._metrics.record (operation, query, start, rowCount, renderer.getValueChars () - chars);
+		}
+	}
 
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-		
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
-			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
-		return rowCount;
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and pass
+	 * every row to the handler as it is read from the cursor.  No row is
+	 * materialized, and the handler reads the values it needs with the typed
+	 * ResultSet getters.
+	 * 
+	 * @param handler called once per row
+	 * @param query the input query string
+	 * @param params the values bound to the '?' placeholders
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query or the
+	 *         handler failed
+	 */
+	public int executeQueryForEach (RowHandler handler, String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		try{
+			rowCount = executeWithCursor (QueryMetrics.FOR_EACH, rs -> {
+				int rows = 0;
+				while (rs.next ()){
+					handler.handle (rs);
+					++rows;
+				}//end while
+				return rows;
+			}, null, query, params);
+			return rowCount;
+		}finally{
+			this._metrics.record (QueryMetrics.FOR_EACH, query, start, rowCount, 0);
+		}
+	}
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * return the first column of the first row as a long.
+	 * 
+	 * @param defaultValue returned when there is no row or the value is null
+	 * @param query the input query string
+	 * @param params the values bound to the '?' placeholders
+	 * @return the value, or the default when the query returns no row or null
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public long executeQueryForLong (long defaultValue, String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		ConnectionPool.PooledConnection pc = acquire ();
+		try{
+			PreparedStatement stmt = prepare (pc, QueryMetrics.LONG, query, params);
+			ResultSet rs = stmt.executeQuery ();
+			long value = defaultValue;
+			rowCount = 0;
+			if (rs.next ()){
+				rowCount = 1;
+				value = rs.getLong (1);
+				if (rs.wasNull ()) value = defaultValue;
+			}//end if
+			rs.close ();
+			return value;
+		}finally{
+			release (pc);
+			this._metrics.record (QueryMetrics.LONG, query, start, rowCount, 0);
+		}
+	}
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * return the result column by column, numeric and date columns as
+	 * primitive arrays.
+	 * 
+	 * @param query the input query string
+	 * @param params the values bound to the '?' placeholders
+	 * @return the query result in columnar form
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ColumnarResult executeQueryAndReturnColumns (String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		try{
+			ColumnarResult result = executeWithCursor (QueryMetrics.COLUMNS, ColumnarResult::read, null, query, params);
+			rowCount = result.getRowCount ();
+			return result;
+		}finally{
+			this._metrics.record (QueryMetrics.COLUMNS, query, start, rowCount, 0);
+		}
+	}
+
+	/*
+	 * reads a result set while it is open on the cursor
+	 */
+	private interface CursorReader<T>{
+		T read (ResultSet rs) throws SQLException, IOException;
+	}
+
+	/*
+	 * runs the query through a server-side cursor and hands the open result
+	 * set to the reader.  With a guard, the server produces at most one row
+	 * past its row limit and the guard can cancel the statement.
+	 */
+	private <T> T executeWithCursor (String operation, CursorReader<T> reader, QueryGuard guard, String query, Object[] params) throws SQLException {
+		ConnectionPool.PooledConnection pc = acquire ();
+		// the driver only uses a cursor inside a transaction, so a statement
+		// running in auto-commit gets a read transaction of its own
+		boolean ownTransaction = pc.getConnection().getAutoCommit ();
+		try{
+			if (ownTransaction) pc.getConnection().setAutoCommit (false);
+
+			//fetches the cached statement and binds the parameters
+			PreparedStatement stmt = prepare (pc, operation, query, params);
+			stmt.setFetchSize (this._fetchSize);
+			if (guard != null){
+				stmt.setMaxRows (guard.getStatementMaxRows ());
+				guard.attach (stmt);
+			}//end if
+
+			//issues the query instruction and streams the rows; closing the
+			//result set closes the cursor, so rows left unread are dropped
+			ResultSet rs = stmt.executeQuery ();
+			T result = reader.read (rs);
+			rs.close ();
+
+			if (ownTransaction){
+				pc.getConnection().commit ();
+				pc.getConnection().setAutoCommit (true);
+			}//end if
+			return result;
+		}catch (IOException e){
+			throw new SQLException ("Unable to write query result: " + e.getMessage (), e);
+		}finally{
+			if (guard != null) guard.detach ();
+			// the pool rolls back and restores auto-commit after a failure
+			release (pc);
+		}
+	}
+
+	/**
+	 * Method to run one of the report queries of options 6-10.
+	 * 
+	 * @param report the report to run
+	 * @param renderer the format and destination of the rows
+	 * @param params the report parameters (k for ListKCarsWithTheMostServices)
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int runReport (Report report, ResultRenderer renderer, Object... params) throws SQLException {
+		return render (QueryMetrics.REPORT, renderer, null, report.sql, params);
+	}
+
+	/**
+	 * Method to run one of the report queries of options 6-10 within the
+	 * limits of a guard, which may also cancel it from another thread.
+	 * 
+	 * @param report the report to run
+	 * @param renderer the format and destination of the rows
+	 * @param guard the row and size limits; its stop reason tells whether
+	 *        the rows written are the whole result
+	 * @param params the report parameters (k for ListKCarsWithTheMostServices)
+	 * @return the number of rows written
+	 * @throws java.sql.SQLException when failed to execute the query or it
+	 *         timed out
+	 */
+	public int runReport (Report report, ResultRenderer renderer, QueryGuard guard, Object... params) throws SQLException {
+		return render (QueryMetrics.REPORT, renderer, guard, report.sql, params);
+	}
+
+	/**
+	 * @return a renderer writing to standard out in the current output format
+	 */
+	public ResultRenderer getConsoleRenderer (){
+		return new ResultRenderer (this._outputFormat, out);
+	}
+
+	public ResultRenderer.Format getOutputFormat (){
+		return this._outputFormat;
+	}
+
+	public void setOutputFormat (ResultRenderer.Format format){
+		this._outputFormat = format;
+	}
+
+	public void setFetchSize (int fetchSize){
+		this._fetchSize = Math.max(1, fetchSize);
 	}
 	
 	/**
@@ -119,35 +484,47 @@ public class MechanicShop{
 	 * a list of records. Each record in turn is a list of attribute values
 	 * 
 	 * @param query the input query string
+	 * @param params the values bound to the '?' placeholders
 	 * @return the query result as a list of records
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-		//creates a statement object 
-		Statement stmt = this._connection.createStatement (); 
-		
-		//issues the query instruction 
-		ResultSet rs = stmt.executeQuery (query); 
-	 
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata 
-		 * contains row and column info. 
-		*/ 
-		ResultSetMetaData rsmd = rs.getMetaData (); 
-		int numCol = rsmd.getColumnCount (); 
-		int rowCount = 0; 
-	 
-		//iterates through the result set and saves the data returned by the query. 
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>(); 
-		while (rs.next()){
-			List<String> record = new ArrayList<String>(); 
-			for (int i=1; i<=numCol; ++i) 
-				record.add(rs.getString (i)); 
-			result.add(record); 
-		}//end while 
-		stmt.close (); 
-		return result; 
+	public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		long chars = 0;
+		ConnectionPool.PooledConnection pc = acquire ();
+		try{
+			//fetches the cached statement and binds the parameters
+			PreparedStatement stmt = prepare (pc, QueryMetrics.RETURN, query, params);
+			
+			//issues the query instruction 
+			ResultSet rs = stmt.executeQuery (); 
+		 
+			/*
+			 * obtains the metadata object for the returned result set.  The metadata 
+			 * contains row and column info. 
+			*/ 
+			ResultSetMetaData rsmd = rs.getMetaData (); 
+			int numCol = rsmd.getColumnCount (); 
+		 
+			//iterates through the result set and saves the data returned by the query. 
+			List<List<String>> result  = new ArrayList<List<String>>(); 
+			while (rs.next()){
+				List<String> record = new ArrayList<String>(); 
+				for (int i=1; i<=numCol; ++i){
+					String value = rs.getString (i);
+					if (value != null) chars += value.length ();
+					record.add(value); 
+				}//end for
+				result.add(record); 
+			}//end while 
+			rs.close (); 
+			rowCount = result.size ();
+			return result; 
+		}finally{
+			release (pc);
+			this._metrics.record (QueryMetrics.RETURN, query, start, rowCount, chars);
+		}
 	}//end executeQueryAndReturnResult
 	
 	/**
@@ -155,55 +532,420 @@ public class MechanicShop{
 	 * method issues the query to the DBMS and returns the number of results
 	 * 
 	 * @param query the input query string
+	 * @param params the values bound to the '?' placeholders
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeQuery (String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		ConnectionPool.PooledConnection pc = acquire ();
+		try{
+			//fetches the cached statement and binds the parameters
+			PreparedStatement stmt = prepare (pc, QueryMetrics.QUERY, query, params);
 
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
 
-		int rowCount = 0;
+			rowCount = 0;
 
-		//iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
-		return rowCount;
+			//iterates through the result set and count nuber of results.
+			if(rs.next()){
+				rowCount++;
+			}//end while
+			rs.close ();
+			return rowCount;
+		}finally{
+			release (pc);
+			this._metrics.record (QueryMetrics.QUERY, query, start, rowCount, 0);
+		}
 	}
-	
+
+	/**
+	 * Method to start a transaction on the calling thread.  Every statement
+	 * the thread issues until commit or rollback runs on the same pooled
+	 * connection with auto-commit off.
+	 * 
+	 * @throws java.sql.SQLException when the thread already has a transaction
+	 *         open or no connection could be acquired
+	 */
+	public void beginTransaction () throws SQLException {
+		if (this._transaction.get() != null)
+			throw new SQLException("A transaction is already open on this thread");
+		ConnectionPool.PooledConnection pc = this._pool.acquire ();
+		try{
+			pc.getConnection().setAutoCommit (false);
+		}catch (SQLException e){
+			this._pool.release (pc);
+			throw e;
+		}//end try
+		this._transaction.set (pc);
+	}//end beginTransaction
+
+	/**
+	 * Method to commit the transaction of the calling thread and give its
+	 * connection back to the pool.
+	 * 
+	 * @throws java.sql.SQLException when no transaction is open or the commit
+	 *         failed
+	 */
+	public void commit () throws SQLException {
+		ConnectionPool.PooledConnection pc = this._transaction.get ();
+		if (pc == null) throw new SQLException("No transaction is open on this thread");
+		this._transaction.remove ();
+		try{
+			pc.getConnection().commit ();
+			pc.getConnection().setAutoCommit (true);
+		}finally{
+			this._pool.release (pc);
+		}
+	}//end commit
+
+	/**
+	 * Method to roll back the transaction of the calling thread, if any, and
+	 * give its connection back to the pool.
+	 */
+	public void rollback (){
+		ConnectionPool.PooledConnection pc = this._transaction.get ();
+		if (pc == null) return;
+		this._transaction.remove ();
+		// the pool rolls back and restores auto-commit on release
+		this._pool.release (pc);
+	}//end rollback
+
+	/**
+	 * Method to execute an update SQL statement once per parameter row as a
+	 * single JDBC batch.  Inside a transaction the rows become visible on
+	 * commit, otherwise the batch is committed on its own.
+	 * 
+	 * @param sql the input SQL string with '?' placeholders
+	 * @param rows the values bound to the placeholders, one array per row
+	 * @return the update count of every row, as reported by the driver
+	 * @throws java.sql.SQLException when any row of the batch failed
+	 */
+	public int[] executeBatch (String sql, List<Object[]> rows) throws SQLException {
+		long start = System.nanoTime ();
+		int rowCount = -1;
+		ConnectionPool.PooledConnection pc = acquire ();
+		PreparedStatement stmt = null;
+		try{
+			stmt = pc.getStatementCache().prepare (sql);
+			applyDeadline (stmt, QueryMetrics.BATCH);
+			for (Object[] row : rows){
+				for (int i = 0; i < row.length; ++i)
+					stmt.setObject (i + 1, row[i]);
+				stmt.addBatch ();
+			}//end for
+			int[] counts = stmt.executeBatch ();
+			rowCount = rows.size ();
+			return counts;
+		}catch (SQLException e){
+			// the statement stays cached, so drop any rows left in its batch
+			if (stmt != null) stmt.clearBatch ();
+			throw e;
+		}finally{
+			release (pc);
+			this._metrics.record (QueryMetrics.BATCH, sql, start, rowCount, 0);
+		}
+	}//end executeBatch
+
+	/**
+	 * Method to stream rows into a table through the COPY protocol.
+	 * 
+	 * @param sql a COPY ... FROM STDIN statement
+	 * @param from the rows in the format named by the statement
+	 * @return the number of rows copied
+	 * @throws java.sql.SQLException when the COPY failed or the input could
+	 *         not be read
+	 */
+	public long copyIn (String sql, Reader from) throws SQLException {
+		long start = System.nanoTime ();
+		long rowCount = -1;
+		ConnectionPool.PooledConnection pc = acquire ();
+		try{
+			rowCount = pc.getConnection().unwrap(PGConnection.class).getCopyAPI().copyIn (sql, from, 1 << 16);
+			return rowCount;
+		}catch (IOException e){
+			throw new SQLException ("Unable to read COPY input: " + e.getMessage (), e);
+		}finally{
+			release (pc);
+			this._metrics.record (QueryMetrics.COPY, sql, start, rowCount, 0);
+		}
+	}//end copyIn
+
+	/**
+	 * Method to stream the rows of a COPY ... TO STDOUT statement, as the
+	 * server sends them, to a byte stream.
+	 * 
+	 * @param sql a COPY ... TO STDOUT statement
+	 * @param to receives the rows in the format named by the statement
+	 * @return the number of rows copied
+	 * @throws java.sql.SQLException when the COPY failed or the output could
+	 *         not be written
+	 */
+	public long copyOut (String sql, OutputStream to) throws SQLException {
+		long start = System.nanoTime ();
+		long rowCount = -1;
+		ConnectionPool.PooledConnection pc = acquire ();
+		try{
+			rowCount = pc.getConnection().unwrap(PGConnection.class).getCopyAPI().copyOut (sql, to);
+			return rowCount;
+		}catch (IOException e){
+			throw new SQLException ("Unable to write COPY output: " + e.getMessage (), e);
+		}finally{
+			release (pc);
+			this._metrics.record (QueryMetrics.COPY, sql, start, rowCount, 0);
+		}
+	}//end copyOut
+
+	/**
+	 * Method to describe the connection pool usage.
+	 * 
+	 * @return pool size, saturation and acquire wait times
+	 */
+	public String getPoolStats (){
+		return this._pool.getStats ();
+	}
+
+	/**
+	 * Method to describe the hit rates of the lookup caches.
+	 * 
+	 * @return one line per cache
+	 */
+	public String getCacheStats (){
+		ChangeListener changes = this._changes;
+		return this._customersByLastName.getStats () + "\n" + this._carsByCustomer.getStats ()
+			+ (changes == null ? "" : "\n" + changes.getStats ());
+	}
+
+	/**
+	 * @return the state of the write-behind intake queue, null when it is
+	 *         not enabled
+	 */
+	public String getIntakeStats (){
+		IntakeQueue intake = this._intake;
+		return intake == null ? null : intake.getStats ();
+	}
+
+	/**
+	 * Method to find the customers with the given last name, from the cache
+	 * when they were looked up recently.
+	 * 
+	 * @param lname the last name; trailing blanks are ignored, as by CHAR
+	 * @return every column of the matching customers
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ColumnarResult findCustomersByLastName (String lname) throws SQLException {
+		return this._customersByLastName.get (lname.stripTrailing (), key -> executeQueryAndReturnColumns (FIND_CUSTOMERS_BY_LAST_NAME, key));
+	}
+
+	/**
+	 * Method to search the customers by part of their name or phone number,
+	 * in any case and allowing for typos, best matches first.  A single word
+	 * is first matched exactly against the last name, from the last name
+	 * cache, and the customers found that way are all returned; only when
+	 * there are none is the trigram search run.  Text shorter than three
+	 * characters has too few trigrams to search by, so it is only matched
+	 * exactly.
+	 * 
+	 * @param text part of the first and/or last name, or of the phone number
+	 * @param limit the largest number of customers returned by the search
+	 * @return every column of the matching customers
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ColumnarResult searchCustomers (String text, int limit) throws SQLException {
+		String term = text.trim ().replaceAll ("\\s+", " ").toLowerCase ();
+		// a last name typed in full, the common case at intake
+		if (term.indexOf (' ') < 0){
+			ColumnarResult exact = findCustomersByLastName (text.trim ());
+			if (exact.getRowCount () > 0 || term.length () < 3) return exact;
+		}//end if
+		// LIKE patterns match the text literally
+		String like = term.replace ("\\", "\\\\").replace ("%", "\\%").replace ("_", "\\_");
+		String digits = term.replaceAll ("[^0-9]", "");
+		String phone = digits.length () < 3 ? null : "%" + digits + "%";
+		return executeQueryAndReturnColumns (SEARCH_CUSTOMERS, "%" + like + "%", term, phone,
+			like + "%", "% " + like + "%", term, phone, limit);
+	}
+
 	/**
-	 * Method to fetch the last value from sequence. This
-	 * method issues the query to the DBMS and returns the current 
-	 * value of sequence used for autogenerated keys
+	 * Method to list the cars owned by a customer, numbered from 1 in vin
+	 * order, from the cache when they were listed recently.
 	 * 
-	 * @param sequence name of the DB sequence
-	 * @return current value of a sequence
+	 * @param customerId the customer id
+	 * @return row number, car, vin, make, model and year of every car
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
+	public ColumnarResult findCarsOfCustomer (int customerId) throws SQLException {
+		return this._carsByCustomer.get (customerId, key -> executeQueryAndReturnColumns (FIND_CARS_OF_CUSTOMER, key));
+	}
+
+	/**
+	 * Method to tell whether the customer owns the car, from the cached list
+	 * of their cars.  A car missing from that list is looked up once more,
+	 * since the list may be older than the ownership.
+	 * 
+	 * @param customerId the customer id
+	 * @param vin the vin of the car
+	 * @return true when the customer owns the car
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public boolean ownsCar (int customerId, String vin) throws SQLException {
+		if (hasCar (findCarsOfCustomer (customerId), vin)) return true;
+		this._carsByCustomer.invalidate (customerId);
+		return hasCar (findCarsOfCustomer (customerId), vin);
+	}
+
+	private static boolean hasCar (ColumnarResult cars, String vin){
+		String wanted = vin.strip ();
+		for (int row = 0; row < cars.getRowCount (); ++row)
+			if (wanted.equals (cars.getString (row, 3).strip ())) return true;
+		return false;
+	}
+
+	/*
+	 * invalidation after a customer or Owns row was written; inside a
+	 * transaction the caller repeats it after the commit
+	 */
+	void customerAdded (String lname){
+		this._customersByLastName.invalidate (lname.stripTrailing ());
+	}
+
+	void ownershipAdded (int customerId){
+		this._carsByCustomer.invalidate (customerId);
+	}
+
+	/*
+	 * invalidation after a change event, of the whole cache when it has no keys
+	 */
+	private static <K> void invalidate (LookupCache<K, ?> cache, List<String> keys, Function<String, K> parse){
+		if (keys == null){
+			cache.clear ();
+			return;
+		}//end if
+		for (String key : keys)
+			cache.invalidate (parse.apply (key));
+	}
+
+	/**
+	 * @return the listener of change events, to subscribe to the changes of
+	 *         a table; null when mechanicshop.changes.listen is not set
+	 */
+	public ChangeListener getChangeListener (){
+		return this._changes;
+	}
+
+	/**
+	 * Method to describe the statements sent so far.
+	 * 
+	 * @return latency percentiles, rows, bytes and errors per operation and
+	 *         per SQL shape
+	 */
+	public String getQueryMetrics (){
+		return this._metrics.getSummary ();
+	}
+
+	/*
+	 * returns the connection of the open transaction, or borrows one from the
+	 * pool for a single statement.
+	 */
+	private ConnectionPool.PooledConnection acquire () throws SQLException {
+		ConnectionPool.PooledConnection pc = this._transaction.get ();
+		return pc != null ? pc : this._pool.acquire ();
+	}
+
+	private void release (ConnectionPool.PooledConnection pc){
+		if (pc != this._transaction.get ())
+			this._pool.release (pc);
+	}
+
+	/**
+	 * Method to fetch the cached prepared statement for the SQL and bind the
+	 * parameters to it.
+	 * 
+	 * @param pc the connection the statement is prepared on
+	 * @param operation the operation running it, for its timeout
+	 * @param sql the input SQL string
+	 * @param params the values bound to the '?' placeholders
+	 * @return the bound statement, owned by the statement cache
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	private PreparedStatement prepare (ConnectionPool.PooledConnection pc, String operation, String sql, Object[] params) throws SQLException {
+		PreparedStatement stmt = pc.getStatementCache().prepare (sql);
+		applyDeadline (stmt, operation);
+		// a guard of an earlier use may have limited the cached statement
+		stmt.setMaxRows (0);
+		for (int i = 0; i < params.length; ++i)
+			stmt.setObject (i + 1, params[i]);
+		return stmt;
+	}
+
+	/**
+	 * Method to bound every statement the calling thread sends until
+	 * clearDeadline: each one is cancelled by the driver when the deadline
+	 * passes, and none is sent after it.
+	 * 
+	 * @param deadlineNanos the System.nanoTime() the request must end by
+	 */
+	public void setDeadline (long deadlineNanos){
+		this._deadline.get ()[0] = deadlineNanos;
+	}
+
+	public void clearDeadline (){
+		this._deadline.get ()[0] = 0;
+	}
+
+	/*
+	 * sets the query timeout of a statement to the timeout of the
+	 * operation or the time left before the deadline of the thread, whichever
+	 * is shorter, or clears it when there is neither
+	 */
+	private void applyDeadline (Statement stmt, String operation) throws SQLException {
+		long timeout = this._timeouts.computeIfAbsent (operation, op -> Long.getLong ("mechanicshop.timeout." + op + "Ms",
+			Long.getLong ("mechanicshop.timeout.defaultMs", 0L)));
+		long remaining = timeout <= 0 ? Long.MAX_VALUE : timeout * 1000000L;
+		long deadline = this._deadline.get ()[0];
+		if (deadline != 0){
+			long left = deadline - System.nanoTime ();
+			if (left <= 0) throw new SQLTimeoutException ("Request timed out");
+			remaining = Math.min (remaining, left);
+		}//end if
+		// the driver takes whole seconds
+		stmt.setQueryTimeout (remaining == Long.MAX_VALUE ? 0 : (int) Math.min (Integer.MAX_VALUE, (remaining + 999999999L) / 1000000000L));
+	}
+
+	/**
+	 * Method to fetch the next value from sequence. Values are reserved
+	 * from the DBMS in blocks and handed out from memory, so most calls do
+	 * not touch the database.
+	 * 
+	 * @param sequence name of the DB sequence, see IdGenerator
+	 * @return next value of a sequence used for generated keys
+	 * @throws java.sql.SQLException when failed to reserve a new block
+	 */
 	
-	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-		
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
+	public int getNextSeqVal(String sequence) throws SQLException {
+		return this._ids.next(sequence);
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Method to close the physical connections if they are open.
 	 */
 	public void cleanup(){
-		try{
-			if (this._connection != null){
-				this._connection.close ();
-			}//end if
-		}catch (SQLException e){
-	         // ignored.
-		}//end try
+		rollback();
+		// flush barrier: queued service requests are written before the pool closes
+		if (this._intake != null){
+			this._intake.close (Long.getLong("mechanicshop.intake.flushTimeoutMs", 30000L));
+			this._intake = null;
+		}//end if
+		this._metrics.stopExport ();
+		if (this._changes != null){
+			this._changes.close ();
+			this._changes = null;
+		}//end if
+		if (this._pool != null){
+			this._pool.close ();
+		}//end if
 	}//end cleanup
 
 	/**
@@ -212,10 +954,10 @@ public class MechanicShop{
 	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
 	 */
 	public static void main (String[] args) {
-		if (args.length != 3) {
+		if (args.length < 3) {
 			System.err.println (
 				"Usage: " + "java [-classpath <classpath>] " + MechanicShop.class.getName () +
-		            " <dbname> <port> <user>");
+		             " <dbname> <port> <user> [--load <csv dir> [--truncate] | --batch <file|-> | --close <file|-> | --serve <port> | --reports <output dir> [report[,k] ...] | --analytics [report[,k] ...] | --export <file.csv|.jsonl[.gz]> <report[,k]|table> | --archive [age in days]]");
 			return;
 		}//end if
 		
@@ -239,6 +981,12 @@ public class MechanicShop{
 			String user = args[2];
 			
 			esql = new MechanicShop (dbname, dbport, user, "");
+
+			// non-interactive modes
+			if (args.length > 3) {
+				runMode(esql, args);
+				return;
+			}//end if
 			
 			boolean keepon = true;
 			while(keepon){
@@ -255,6 +1003,10 @@ public class MechanicShop{
 				System.out.println("9. ListKCarsWithTheMostServices");
 				System.out.println("10. ListCustomersInDescendingOrderOfTheirTotalBill");
 				System.out.println("11. < EXIT");
+				System.out.println("12. ShowConnectionPoolStatistics");
+				System.out.println("13. SetOutputFormat");
+				System.out.println("14. ShowQueryMetrics");
+				System.out.println("15. BrowseReport");
 				
 				/*
 				 * FOLLOW THE SPECIFICATION IN THE PROJECT DESCRIPTION
@@ -271,6 +1023,13 @@ public class MechanicShop{
 					case 9: ListKCarsWithTheMostServices(esql); break;
 					case 10: ListCustomersInDescendingOrderOfTheirTotalBill(esql); break;
 					case 11: keepon = false; break;
+					case 12:
+						System.out.println(esql.getPoolStats() + "\n" + esql.getCacheStats());
+						if (esql.getIntakeStats() != null) System.out.println(esql.getIntakeStats());
+						break;
+					case 13: SetOutputFormat(esql); break;
+					case 14: System.out.println(esql.getQueryMetrics()); break;
+					case 15: BrowseReport(esql); break;
 				}
 			}
 		}catch(Exception e){
@@ -288,6 +1047,60 @@ public class MechanicShop{
 		}
 	}
 
+	/*
+	 * runs the mode named by the fourth command line argument
+	 */
+	private static void runMode(MechanicShop esql, String[] args) throws Exception {
+		switch (args[3]){
+			case "--load":
+				if (args.length < 5) throw new IllegalArgumentException("--load needs the directory of the CSV files");
+				boolean truncate = args.length > 5 && args[5].equals("--truncate");
+				new BulkLoader(esql, new File(args[4]), Integer.getInteger("mechanicshop.load.threads", 3)).load(truncate);
+				break;
+			case "--batch":
+				if (args.length < 5) throw new IllegalArgumentException("--batch needs a command file, or - for standard input");
+				BufferedReader script = args[4].equals("-") ? in : new BufferedReader(new FileReader(args[4]));
+				new BatchRunner(esql, Integer.getInteger("mechanicshop.batch.size", 500)).run(script);
+				break;
+			case "--close":
+				if (args.length < 5) throw new IllegalArgumentException("--close needs a closed_request.csv file, or - for standard input");
+				BufferedReader closes = args[4].equals("-") ? in : new BufferedReader(new FileReader(args[4]));
+				new BulkCloser(esql, Integer.getInteger("mechanicshop.batch.size", 500)).run(closes);
+				break;
+			case "--serve":
+				if (args.length < 5) throw new IllegalArgumentException("--serve needs the port to listen on");
+				new ShopServer(esql, Integer.parseInt(args[4]),
+					Integer.getInteger("mechanicshop.server.maxClients", 256),
+					Integer.getInteger("mechanicshop.server.maxInFlight", 2 * Integer.getInteger("mechanicshop.pool.max", 8)),
+					Long.getLong("mechanicshop.server.admissionTimeoutMs", 1000L),
+					Long.getLong("mechanicshop.server.requestTimeoutMs", 10000L)).run();
+				break;
+			case "--reports":
+				if (args.length < 5) throw new IllegalArgumentException("--reports needs the directory of the report files");
+				new ReportBatch(esql, new File(args[4])).run(Arrays.copyOfRange(args, 5, args.length));
+				break;
+			case "--analytics":
+				// reads the database once, then reports from memory
+				ReportSnapshot snapshot = ReportSnapshot.fromDatabase(esql, Runtime.getRuntime().availableProcessors());
+				try{
+					snapshot.runAll(esql.getConsoleRenderer(), Arrays.copyOfRange(args, 4, args.length));
+				}finally{
+					snapshot.close();
+				}
+				break;
+			case "--export":
+				if (args.length < 6) throw new IllegalArgumentException("--export needs the output file and a report or table");
+				new ReportExporter(esql).export(args[5], new File(args[4]));
+				break;
+			case "--archive":
+				new HistoryArchiver(esql, Integer.getInteger("mechanicshop.archive.batchSize", 10000))
+					.archive(args.length > 4 ? Integer.parseInt(args[4]) : Integer.getInteger("mechanicshop.archive.ageDays", 365));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown mode " + args[3]);
+		}
+	}//end runMode
+
 	public static int readChoice() {
 		int input;
 		// returns only if a correct value is given.
@@ -304,6 +1117,208 @@ public class MechanicShop{
 		return input;
 	}//end readChoice
 	
+	/*
+	 * The operations below without prompts, for batch mode, the benchmarks
+	 * and any other caller that already has the input.
+	 */
+
+	public static void addCustomer(MechanicShop esql, int id, String fname, String lname, String phone, String address) throws SQLException {
+		esql.executeUpdate(INSERT_CUSTOMER, id, fname, lname, phone, address);
+		esql.customerAdded(lname);
+	}
+
+	public static void addMechanic(MechanicShop esql, int id, String fname, String lname, int experience) throws SQLException {
+		esql.executeUpdate(INSERT_MECHANIC, id, fname, lname, experience);
+	}
+
+	public static void addCar(MechanicShop esql, String vin, String make, String model, int year) throws SQLException {
+		// a car shows in no customer's list until an Owns row refers to it
+		esql.executeUpdate(INSERT_CAR, vin, make, model, year);
+	}
+
+	/**
+	 * Method to record that the customer owns the car.
+	 * 
+	 * @return the ownership_id of the new Owns row
+	 */
+	public static int addOwnership(MechanicShop esql, int customerId, String vin) throws SQLException {
+		int ownershipId = esql.getNextSeqVal(IdGenerator.OWNS_OWNERSHIP_ID);
+		esql.executeUpdate(INSERT_OWNS, ownershipId, customerId, vin);
+		esql.ownershipAdded(customerId);
+		return ownershipId;
+	}
+
+	/**
+	 * Method to open a service request, dated today, for a car of the
+	 * customer.  Ownership is checked by the insert itself, so this is one
+	 * round trip.
+	 * 
+	 * @return the rid of the new request
+	 * @throws java.sql.SQLException when the customer does not own the car
+	 *         or the insert failed
+	 */
+	public static int insertServiceRequest(MechanicShop esql, int customerId, String vin, int odometer, String complaint) throws SQLException {
+		int rid = esql.getNextSeqVal(IdGenerator.SERVICE_REQUEST_RID);
+		long inserted = esql.executeQueryForLong(-1, INTAKE_OWNED_CAR, rid, odometer, complaint, customerId, vin);
+		if (inserted < 0) throw notOwned(customerId, vin);
+		return rid;
+	}
+
+	private static SQLException notOwned(int customerId, String vin){
+		return new SQLException("Customer " + customerId + " does not own a car with VIN " + vin);
+	}
+
+	/**
+	 * Method to open a service request, dated today, for a car of the
+	 * customer: queued for the background writer when the intake queue is
+	 * enabled, otherwise inserted at once.  Either way no rid is issued for
+	 * a car the customer does not own.
+	 * 
+	 * @return the rid of the request
+	 * @throws java.sql.SQLException when the customer does not own the car,
+	 *         the insert failed, or the request could not be queued
+	 */
+	public static int openServiceRequest(MechanicShop esql, int customerId, String vin, int odometer, String complaint) throws SQLException {
+		IntakeQueue intake = esql._intake;
+		if (intake != null){
+			// the writer would only drop it, after the rid was handed out
+			if (!esql.ownsCar(customerId, vin)) throw notOwned(customerId, vin);
+			return intake.submit(customerId, vin, odometer, complaint);
+		}//end if
+		return insertServiceRequest(esql, customerId, vin, odometer, complaint);
+	}
+
+	/**
+	 * Method to add a car, record that the customer owns it and open a
+	 * service request for it, dated today, as one statement: either all three
+	 * rows are written or none.
+	 * 
+	 * @return the rid of the new request
+	 * @throws java.sql.SQLException when any of the inserts failed
+	 */
+	public static int insertServiceRequestForNewCar(MechanicShop esql, int customerId, String vin, String make, String model, int year,
+			int odometer, String complaint) throws SQLException {
+		int ownershipId = esql.getNextSeqVal(IdGenerator.OWNS_OWNERSHIP_ID);
+		int rid = esql.getNextSeqVal(IdGenerator.SERVICE_REQUEST_RID);
+		esql.executeQueryForLong(-1, INTAKE_NEW_CAR, vin, make, model, year, ownershipId, customerId, rid, odometer, complaint);
+		esql.ownershipAdded(customerId);
+		return rid;
+	}
+
+	/**
+	 * Method to close a service request.  The request and the mechanic must
+	 * exist, the request must still be open and the date must not be before
+	 * it was opened; all of it is checked by the insert itself, so this is
+	 * one round trip unless the close is refused.
+	 *
+	 * @return the wid of the new Closed_Request row
+	 * @throws java.sql.SQLException when the request cannot be closed, with
+	 *         the reason, or the insert failed
+	 */
+	public static int closeServiceRequest(MechanicShop esql, int rid, int mid, java.sql.Date date, String comment, int bill) throws SQLException {
+		int wid = esql.getNextSeqVal(IdGenerator.CLOSED_REQUEST_WID);
+		long inserted = esql.executeQueryForLong(-1, CLOSE_REQUEST, wid, date, comment, bill, rid, mid, date);
+		if (inserted < 0)
+			throw new SQLException(whyNotClosed(esql, rid, mid, date));
+		return wid;
+	}
+
+	/**
+	 * Method to close many service requests.  They are written in chunks of
+	 * up to chunkSize requests, one statement per chunk, so each chunk is
+	 * closed as a whole or not at all.  A request refused by the checks of
+	 * closeServiceRequest is skipped without failing its chunk; when a chunk
+	 * fails anyway (a bill that is not positive, say) its requests are closed
+	 * one at a time.
+	 *
+	 * @param requests one {rid, mid, java.sql.Date, comment, bill} array per
+	 *        request
+	 * @param chunkSize requests per statement
+	 * @param rejected gets "rid &lt;rid&gt;: &lt;reason&gt;" for every request that was
+	 *        not closed
+	 * @return the number of requests closed
+	 * @throws java.sql.SQLException when no wids could be reserved
+	 */
+	public static int closeServiceRequests(MechanicShop esql, List<Object[]> requests, int chunkSize, List<String> rejected) throws SQLException {
+		int closed = 0;
+		chunkSize = Math.max(1, chunkSize);
+		for (int from = 0; from < requests.size(); from += chunkSize){
+			List<Object[]> chunk = requests.subList(from, Math.min(requests.size(), from + chunkSize));
+			int n = chunk.size();
+			StringBuilder wids = new StringBuilder("{"), rids = new StringBuilder("{"), mids = new StringBuilder("{");
+			StringBuilder dates = new StringBuilder("{"), comments = new StringBuilder("{"), bills = new StringBuilder("{");
+			for (int i = 0; i < n; ++i){
+				Object[] r = chunk.get(i);
+				String separator = i == 0 ? "" : ",";
+				wids.append(separator).append(esql.getNextSeqVal(IdGenerator.CLOSED_REQUEST_WID));
+				rids.append(separator).append(r[0]);
+				mids.append(separator).append(r[1]);
+				dates.append(separator).append(r[2]);
+				appendArrayText(comments.append(separator), (String) r[3]);
+				bills.append(separator).append(r[4]);
+			}//end for
+
+			final HashSet<Integer> done = new HashSet<Integer>();
+			try{
+				esql.executeQueryForEach(row -> done.add(row.getInt(1)), CLOSE_REQUESTS,
+					wids.append('}').toString(), rids.append('}').toString(), mids.append('}').toString(),
+					dates.append('}').toString(), comments.append('}').toString(), bills.append('}').toString());
+			}catch (SQLException e){
+				// the chunk was rolled back; find the requests that failed it
+				for (Object[] r : chunk){
+					try{
+						closeServiceRequest(esql, (Integer) r[0], (Integer) r[1], (java.sql.Date) r[2], (String) r[3], (Integer) r[4]);
+						++closed;
+					}catch (SQLException e1){
+						rejected.add("rid " + r[0] + ": " + e1.getMessage());
+					}//end try
+				}//end for
+				continue;
+			}//end try
+
+			for (Object[] r : chunk){
+				// a rid given twice in the chunk is closed once
+				if (done.remove(r[0])) ++closed;
+				else rejected.add("rid " + r[0] + ": " + whyNotClosed(esql, (Integer) r[0], (Integer) r[1], (java.sql.Date) r[2]));
+			}//end for
+		}//end for
+		return closed;
+	}//end closeServiceRequests
+
+	/*
+	 * explains why closing the request inserted no row
+	 */
+	private static String whyNotClosed(MechanicShop esql, int rid, int mid, java.sql.Date date) throws SQLException {
+		final Object[] found = new Object[3];
+		esql.executeQueryForEach(row -> {
+			found[0] = row.getDate(1);
+			found[1] = row.getBoolean(2);
+			found[2] = row.getBoolean(3);
+		}, CLOSE_REQUEST_DIAGNOSIS, rid, mid, rid);
+		if (found[0] == null) return "There is no service request with rid " + rid;
+		if (!(Boolean) found[1]) return "There is no mechanic with id " + mid;
+		if ((Boolean) found[2]) return "Service request " + rid + " is already closed";
+		if (date.before((java.sql.Date) found[0])) return "Service request " + rid + " was opened on " + found[0] + ", after " + date;
+		return "Service request " + rid + " could not be closed";
+	}
+
+	/*
+	 * appends a value as an element of a PostgreSQL array literal
+	 */
+	private static void appendArrayText(StringBuilder array, String value){
+		if (value == null){
+			array.append("NULL");
+			return;
+		}//end if
+		array.append('"');
+		for (int i = 0; i < value.length(); ++i){
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') array.append('\\');
+			array.append(c);
+		}//end for
+		array.append('"');
+	}
+
 	public static void AddCustomer(MechanicShop esql) throws SQLException {//1
 		System.out.println(" Enter the customer's id:");
                 String c_id = "";
@@ -355,8 +1370,8 @@ public class MechanicShop{
                         System.out.println("Wrong input entry");
                }
 
-		esql.executeUpdate("INSERT INTO Customer VALUES (" + c_id + ",'" + fname + "' , '" + lname + "' , '" + s_phone + "' , '" + address + "')");
-		esql.executeQueryAndPrintResult("Select * from Customer;");	
+		addCustomer(esql, Integer.parseInt(c_id), fname, lname, s_phone, address);
+		esql.executeQueryAndPrintResult("Select * from Customer");	
 	} 
 	
 	public static void AddMechanic(MechanicShop esql) throws SQLException{//2
@@ -399,8 +1414,8 @@ public class MechanicShop{
 		  	System.out.println("Wrong Input entry");
 		   }
 		 mech_exp = Integer.parseInt(exp_s);
-		esql.executeUpdate("INSERT INTO Mechanic VALUES ('" + mech_id + "' , '"  + fname + "' , '" + lname + "' , '" + mech_exp + "');");
-		esql.executeQueryAndPrintResult("Select * from Mechanic;");
+		addMechanic(esql, mech_id, fname, lname, mech_exp);
+		esql.executeQueryAndPrintResult("Select * from Mechanic");
        }
 		
 	public static void AddCar(MechanicShop esql) throws SQLException{//3
@@ -444,26 +1459,22 @@ public class MechanicShop{
                         System.out.println("Wrong Input entry");
                         }
 		
-		esql.executeUpdate("INSERT INTO Car VALUES (" + "'" + vin + "' , '" + make + "' , '" + model + "' , '" +  c + "');");  
-		esql.executeQueryAndPrintResult("Select * from Car;");
+		addCar(esql, vin, make, model, Integer.parseInt(c));
+		esql.executeQueryAndPrintResult("Select * from Car");
    }
 
 	public static void InsertServiceRequest(MechanicShop esql){//4
     
 	try{
-			String q_size = String.format("SELECT rid FROM Service_Request");
-			List<List<String>> ridsize = esql.executeQueryAndReturnResult(q_size);
-			int n_rid = ridsize.size() + 1;
-
-         		System.out.print("Enter the last name of customer: ");
+         		System.out.print("Enter the name or phone number of customer: ");
 			String s_lname = in.readLine();
 			
-			String query = String.format("SELECT * FROM Customer WHERE lname = '%s'", s_lname);
-			int rowcount = esql.executeQueryAndPrintResult(query);
+			ColumnarResult customers = esql.searchCustomers(s_lname, Integer.getInteger("mechanicshop.search.limit", 20));
+			int rowcount = esql.getConsoleRenderer().render(customers, customers.getColumnCount());
 
 
 			if(rowcount == 0) {
-				System.out.println("Last name does not exist, would you like to add a new customer? Y/N: ");
+				System.out.println("No customer matches, would you like to add a new customer? Y/N: ");
 				String resp = in.readLine();
 
 				if(resp.equals("y") || resp.equals("Y")) {
@@ -478,11 +1489,11 @@ public class MechanicShop{
 				System.out.println("Input the id of the customer you would like to select: ");
 				String resp_id = in.readLine();
 				int custid = Integer.parseInt(resp_id);
-				query = String.format("SELECT Row_Number() OVER ( ORDER BY Owns.car_vin ), Car FROM Customer,Owns,Car WHERE Customer.id = Owns.customer_id AND Car.vin = Owns.car_vin AND Owns.customer_id = '%s'", custid);
-				rowcount = esql.executeQueryAndPrintResult(query);
-				System.out.println("Please input the Row Number of the car you would like to select, or type 0 to add a new car: ");
-				String row0 = in.readLine();
-				int rownum = Integer.parseInt(row0);
+				ColumnarResult cars = esql.findCarsOfCustomer(custid);
+				esql.getConsoleRenderer().render(cars, 2);
+				System.out.println("Please input the Row Number or the VIN of the car you would like to select, or type 0 to add a new car: ");
+				String row0 = in.readLine().trim();
+				int rownum = row0.matches("\\d+") ? Integer.parseInt(row0) : -1;
 				
 				if(rownum == 0) {
 					System.out.print("Enter the new car's VIN: ");
@@ -495,18 +1506,6 @@ public class MechanicShop{
 					String year_num = in.readLine();
 					int newyear = Integer.parseInt(year_num);
 
-					query = String.format("INSERT INTO Car(vin, make, model, year) VALUES('%s', '%s', '%s', %d)", newvin, newmake, newmodel, newyear);
-					esql.executeUpdate(query);
-					
-					q_size = String.format("SELECT ownership_id FROM Owns");
-					List<List<String>> ownsize = esql.executeQueryAndReturnResult(q_size);
-					int newown = ownsize.size() + 1;
-					query = String.format("INSERT INTO Owns(ownership_id, customer_id, car_vin) VALUES(%d, %d, '%s')", newown, custid, newvin);
-					esql.executeUpdate(query);
-
-
-					System.out.print("New car added to database.\n");
-
 					System.out.print("Enter the odometer reading on the car: ");
 					String newodo = in.readLine();
 
@@ -514,22 +1513,26 @@ public class MechanicShop{
 					System.out.print("Enter customer's complaints with the car: ");
 					String newcomplaint = in.readLine();
 					
-
-					query = String.format("INSERT INTO Service_Request(rid, customer_id, car_vin, date, odometer, complain) VALUES(%d, %d, '%s', CURRENT_DATE, %d, '%s')", n_rid, custid, newvin, odo, newcomplaint);
-					esql.executeUpdate(query);
+					// car, ownership and request are written together
+					int n_rid = insertServiceRequestForNewCar(esql, custid, newvin, newmake, newmodel, newyear, odo, newcomplaint);
+					System.out.print("New car added to database.\n");
 					System.out.print("Your service request id is: ");
 					System.out.print(n_rid);
 					System.out.printf("%n"); 
 				}
 				else {
 
-					query = String.format("SELECT test FROM (Select Row_Number() OVER ( ORDER BY Owns.car_vin ) as rownumber,Car.vin,Car.make,Car.model,Car.year FROM Customer,Owns,Car WHERE Customer.id = Owns.customer_id AND Car.vin = Owns.car_vin AND Owns.customer_id = '%s') AS test WHERE rownumber = %d ", custid,rownum);
-					List<List<String>> result  = esql.executeQueryAndReturnResult(query);
-					
-					String car = result.get(0).get(0);
-					System.out.println(car);
-					String[] output = car.split(",");
-					String newvin = output[1];
+					// the listed rows are numbered from 1 in order; anything
+					// else is taken as a VIN and checked by the insert
+					String newvin = row0;
+					if (rownum > 0) {
+						if (rownum > cars.getRowCount()) {
+							System.out.println("There is no car with row number " + rownum);
+							return;
+						}
+						newvin = cars.getString(rownum - 1, 3);
+						System.out.println(newvin + " " + cars.getString(rownum - 1, 4) + " " + cars.getString(rownum - 1, 5) + " " + cars.getInt(rownum - 1, 6));
+					}
 					
 					System.out.print("Enter the current odometer reading on the car: ");
 					String newodo = in.readLine();
@@ -537,8 +1540,7 @@ public class MechanicShop{
 					System.out.print("Enter customer's complaints with the car: ");
 					String newcomplaint = in.readLine();
 
-					query = String.format("INSERT INTO Service_Request(rid, customer_id, car_vin, date, odometer, complain) VALUES(%d, %d, '%s', CURRENT_DATE, %d, '%s')", n_rid, custid, newvin, odo, newcomplaint);
-					esql.executeUpdate(query);
+					int n_rid = openServiceRequest(esql, custid, newvin, odo, newcomplaint);
 					System.out.print("Your service request id is: ");
 					System.out.print(n_rid);
 					System.out.printf("%n"); 
@@ -556,38 +1558,36 @@ public class MechanicShop{
 	}	
 
 	//Function 5 is done by Jeeavn
-	public static void CloseServiceRequest(MechanicShop esql) throws Exception{//5
+	public static void CloseServiceRequest(MechanicShop esql){//5
+		try{
 
- /*		try{
+            System.out.print("Enter the service request id: ");
+            int cr_rid = Integer.parseInt(in.readLine().trim());
 
-            System.out.println("The rid is: "+args[0]);
-            System.out.println("The mid is: "+args[1]);
+            System.out.print("Enter the mechanic id: ");
+            int cr_mid = Integer.parseInt(in.readLine().trim());
 
-            System.out.print("Enter the date the request was closed: ");
-            String cr_date = in.readLine();
+            System.out.print("Enter the date the request was closed (blank for today): ");
+            String cr_date = in.readLine().trim();
+            java.sql.Date date = cr_date.isEmpty() ? new java.sql.Date(System.currentTimeMillis())
+            	: java.sql.Date.valueOf(BulkLoader.normalizeDate(cr_date));
 
             System.out.print("Enter the comments on the closed request: ");
             String cr_comment = in.readLine();
 
             System.out.print("Enter the bill of the closed request: ");
-            String cr_bill = in.readLine();
+            int cr_bill = Integer.parseInt(in.readLine().trim());
 
-            String query1 = "INSERT INTO Closed_Request (rid, mid, date, comment, bill) VALUES ( " + "'" + args[0] + "' , '" + args[1] + "' , '" + cr_date + "' , '" + cr_comment + "' , " + cr_bill +")";
-
-            esql.executeUpdate(query1);
+            int wid = closeServiceRequest(esql, cr_rid, cr_mid, date, cr_comment, cr_bill);
+            System.out.println("Service request " + cr_rid + " closed, work id " + wid);
         }
         catch(Exception e){
-            System.out.println(e.getMessage());
+            System.err.println(e.getMessage());
         }
-    }	
-	}
- */
 	}
 	public static void ListCustomersWithBillLessThan100(MechanicShop esql){//6
 		try{
-         		String query6 = "SELECT Customer.fname, Customer.lname, Closed_Request.bill, Service_Request.date, Closed_Request.comment FROM Customer,Closed_Request,Service_Request WHERE Closed_Request.bill < 100 AND Closed_Request.rid = Service_Request.rid AND Service_Request.customer_id = Customer.id";
-         		int rowCount = esql.executeQueryAndPrintResult(query6);
-         		System.out.println ("total row(s): " + rowCount);
+         		printReport(esql, Report.BILL_LESS_THAN_100);
       		}
 		catch(Exception e){
          		System.err.println (e.getMessage());
@@ -596,10 +1596,7 @@ public class MechanicShop{
 
 	public static void ListCustomersWithMoreThan20Cars(MechanicShop esql){//7
 	try{
- 		String query7 = "SELECT cars.fname, cars.lname, cars.numCars FROM (SELECT Owns.customer_id, Customer.fname, Customer.lname, COUNT(*) numCars FROM Owns,Customer WHERE Customer.id = Owns.customer_id GROUP BY Owns.customer_id, Customer.fname, Customer.lname) AS cars WHERE numCars > 20";
-		
- 		int rowCount = esql.executeQueryAndPrintResult(query7);
- 		System.out.println ("total row(s): " + rowCount);
+ 		printReport(esql, Report.MORE_THAN_20_CARS);
 	}catch(Exception e){
  		System.err.println (e.getMessage());
 	}
@@ -609,9 +1606,7 @@ public class MechanicShop{
 	
 	public static void ListCarsBefore1995With50000Milles(MechanicShop esql){//8
 		try{
-         		String query8 = "SELECT Car.make, Car.model, Car.year, Service_Request.odometer FROM Car,Service_Request WHERE Service_Request.car_vin = Car.vin AND Service_Request.odometer < 50000 AND Car.year < 1995";
-         		int rowCount = esql.executeQueryAndPrintResult(query8);
-         		System.out.println ("total row(s): " + rowCount);
+         		printReport(esql, Report.CARS_BEFORE_1995);
       		}catch(Exception e){
          		System.err.println (e.getMessage());
       		}
@@ -621,9 +1616,12 @@ public class MechanicShop{
 	try{
 			System.out.print("The number of cars you would like to see (k): ");
 			String resp9 = in.readLine();
-			String query9 = "SELECT make, model, R.sreq FROM Car AS C, ( SELECT car_vin, COUNT(rid) AS sreq FROM Service_Request GROUP BY car_vin ) AS R WHERE R.car_vin = C.vin ORDER BY R.sreq DESC LIMIT "+resp9+";";
-			int rowCount = esql.executeQueryAndPrintResult(query9);
-			System.out.println("total row(s): " + rowCount);
+			int k = Integer.parseInt(resp9.trim());
+			if (k <= 0) {
+				System.out.println("k must be a positive number");
+				return;
+			}
+			printReport(esql, Report.K_MOST_SERVICED_CARS, k);
 		}
 		catch(Exception e){
 			System.out.println(e.getMessage());
@@ -633,13 +1631,105 @@ public class MechanicShop{
 	public static void ListCustomersInDescendingOrderOfTheirTotalBill(MechanicShop esql){//10
 		//
 		try{
-			String query10 = "SELECT C.fname , C.lname, Total FROM Customer AS C, (SELECT sr.customer_id, SUM(CR.bill) AS Total FROM Closed_Request AS CR, Service_Request AS SR WHERE CR.rid = SR.rid GROUP BY SR.customer_id) AS A WHERE C.id=A.customer_id ORDER BY A.Total DESC;";
-			int rowCount = esql.executeQueryAndPrintResult(query10);
-			System.out.println("total row(s): " + rowCount);
+			printReport(esql, Report.TOTAL_BILL_DESCENDING);
 		}
 		catch(Exception e){
 			System.out.println(e.getMessage());
 		}
 		
 	}
+
+	/*
+	 * prints a report of the menu within the configured result limits; at
+	 * a terminal, typing c and Enter while it runs cancels it
+	 */
+	private static void printReport(MechanicShop esql, Report report, Object... params) throws SQLException {
+		QueryGuard guard = QueryGuard.fromProperties();
+		// with input from a file or pipe, the next line is not meant to cancel
+		Thread watchdog = null;
+		if (System.console() != null) {
+			watchdog = new Thread(() -> watchForCancel(guard), "report-watchdog");
+			watchdog.setDaemon(true);
+			System.out.println("(type c and Enter to cancel)");
+			watchdog.start();
+		}
+		int rowCount;
+		try{
+			rowCount = esql.runReport(report, esql.getConsoleRenderer(), guard, params);
+		}finally{
+			if (watchdog != null) {
+				watchdog.interrupt();
+				try{
+					watchdog.join();
+				}catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		System.out.println("total row(s): " + rowCount + (guard.getStopReason() == null ? "" : ", partial result: " + guard.getStopReason()));
+	}
+
+	/*
+	 * cancels the guard when the next line typed is "c"; any other input,
+	 * complete or not, is handed back to the menu.  Only reads what is
+	 * already typed, so it never blocks and ends when interrupted.
+	 */
+	private static void watchForCancel(QueryGuard guard){
+		final int limit = 8192;
+		StringBuilder line = new StringBuilder();
+		boolean marked = false;
+		try{
+			while (true){
+				while (in.ready()){
+					if (!marked){
+						in.mark(limit);
+						marked = true;
+					}//end if
+					int c = in.read();
+					if (c == '\n' || c < 0){
+						if (!line.toString().trim().equalsIgnoreCase("c")) return;
+						// the cancel line is consumed
+						marked = false;
+						guard.cancel();
+						return;
+					}//end if
+					line.append((char) c);
+					if (line.length() >= limit) return;
+				}//end while
+				Thread.sleep(100);
+			}//end while
+		}catch (InterruptedException | IOException e){
+			// the report ended.
+		}finally{
+			try{
+				if (marked) in.reset();
+			}catch (IOException e){
+				// ignored, the mark was lost.
+			}//end try
+		}//end try
+	}
+
+	public static void SetOutputFormat(MechanicShop esql){//13
+		System.out.print("Output format (table, tsv, csv) [" + esql.getOutputFormat().name().toLowerCase() + "]: ");
+		try{
+			String resp = in.readLine();
+			if (resp != null && !resp.trim().isEmpty())
+				esql.setOutputFormat(ResultRenderer.Format.parse(resp));
+		}catch(Exception e){
+			System.out.println("Your input is invalid!");
+		}
+	}
+
+	public static void BrowseReport(MechanicShop esql){//15
+		try{
+			System.out.print("Report to browse (6, 8 or 10): ");
+			Report report = Report.parse(in.readLine());
+			System.out.print("Rows per page [20]: ");
+			String size = in.readLine();
+			int pageSize = size == null || size.trim().isEmpty() ? 20 : Integer.parseInt(size.trim());
+			new ReportBrowser(esql, report, pageSize).run(in);
+		}catch(Exception e){
+			System.out.println(e.getMessage());
+		}
+	}
 }
@@ -0,0 +1,147 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * This class bounds one rendered query: at most maxRows rows and maxChars
+ * characters of values are written, and cancel stops it from any thread.
+ * The statement is sent with one row more than the limit as its maximum, so
+ * the server stops producing rows there, and reading stops at the limit;
+ * the cursor is then closed, which frees the rest of the result on the
+ * server.  What was written so far stays written and getStopReason tells
+ * why the result is partial.
+ *
+ * cancel sends a cancel request for the statement while the server is
+ * still computing it, and stops the reading of rows once they arrive.
+ *
+ */
+
+public class QueryGuard{
+	private final long _maxRows;
+	private final long _maxChars;
+	private volatile boolean _cancelled = false;
+	//statement running for this guard, null when none is
+	private volatile Statement _statement = null;
+	private volatile String _stopReason = null;
+	//rows admitted so far, the rows written when the query fails midway
+	private volatile long _rows = 0;
+
+	/**
+	 * @param maxRows the most rows written, 0 for no limit
+	 * @param maxChars the most characters of values written, 0 for no limit
+	 */
+	public QueryGuard(long maxRows, long maxChars){
+		this._maxRows = Math.max(0, maxRows);
+		this._maxChars = Math.max(0, maxChars);
+	}
+
+	/**
+	 * @return a guard with the limits of mechanicshop.result.maxRows and
+	 *         mechanicshop.result.maxChars, unlimited when not set
+	 */
+	public static QueryGuard fromProperties(){
+		return new QueryGuard(Long.getLong("mechanicshop.result.maxRows", 0L), Long.getLong("mechanicshop.result.maxChars", 0L));
+	}
+
+	/**
+	 * @return the maximum rows for Statement.setMaxRows: one more than the
+	 *         limit, so reaching it can be told from a result of exactly that
+	 *         size; 0 for no limit
+	 */
+	int getStatementMaxRows(){
+		return this._maxRows == 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, this._maxRows + 1);
+	}
+
+	/**
+	 * Method to decide whether another row may be written.
+	 *
+	 * @param rows the rows written so far
+	 * @param chars the characters of values written so far
+	 * @return false, with the stop reason set, when the query was cancelled
+	 *         or a limit was reached
+	 */
+	boolean admit(long rows, long chars){
+		if (this._cancelled) this._stopReason = "cancelled";
+		else if (this._maxRows > 0 && rows >= this._maxRows) this._stopReason = "row limit of " + this._maxRows + " reached";
+		else if (this._maxChars > 0 && chars >= this._maxChars) this._stopReason = "size limit of " + this._maxChars + " characters reached";
+		else{
+			this._rows = rows + 1;
+			return true;
+		}//end if
+		return false;
+	}
+
+	/**
+	 * Method to tell whether a failure ends the result as a partial one and
+	 * record why: the server cancelled the statement at the request of
+	 * cancel, or on its timeout after some rows were written.  A timeout
+	 * before the first row stays a failure.
+	 *
+	 * @param e the failure of the query
+	 * @return true when the rows written so far are the partial result
+	 */
+	boolean stoppedByCancel(SQLException e){
+		// query_canceled
+		if (!"57014".equals(e.getSQLState())) return false;
+		if (this._cancelled) this._stopReason = "cancelled";
+		else if (this._rows > 0) this._stopReason = "timed out";
+		else return false;
+		return true;
+	}
+
+	/**
+	 * @return the rows admitted so far
+	 */
+	public long getRows(){
+		return this._rows;
+	}
+
+	void attach(Statement stmt) throws SQLException {
+		this._statement = stmt;
+		// cancelled before the statement was sent: it is not sent
+		if (this._cancelled) throw new SQLException("canceling statement due to user request", "57014");
+	}
+
+	void detach(){
+		this._statement = null;
+	}
+
+	/**
+	 * Method to stop the query: cancels its statement on the server, or
+	 * stops reading its rows.  Safe to call from any thread, at any time.
+	 */
+	public void cancel(){
+		this._cancelled = true;
+		Statement stmt = this._statement;
+		if (stmt == null) return;
+		try{
+			// the driver ignores it unless the statement is executing
+			stmt.cancel();
+		}catch (SQLException e){
+			// ignored, the rows are no longer read anyway.
+		}//end try
+	}
+
+	public boolean isCancelled(){
+		return this._cancelled;
+	}
+
+	/**
+	 * @return why the result is partial, null when it is complete
+	 */
+	public String getStopReason(){
+		return this._stopReason;
+	}
+}
@@ -0,0 +1,384 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records the latency, row count, text bytes fetched and errors
+ * of every statement MechanicShop sends, once per operation (the execute
+ * method used) and once per operation and SQL shape.  The shape is the SQL
+ * text with literals replaced by '?' and whitespace collapsed; parameterized
+ * statements are already their own shape.
+ *
+ * Recording takes no lock: counters are LongAdders and latencies go into a
+ * log-linear histogram of atomic buckets (16 buckets per power of two, so
+ * percentiles are within about 6%).  The summary can be printed from the menu
+ * and, when a file is configured, written there periodically in the
+ * Prometheus text format.
+ *
+ */
+
+public class QueryMetrics{
+	//operations, one per execute method of MechanicShop
+	public static final String UPDATE = "update";
+	public static final String QUERY = "query";
+	public static final String PRINT = "print";
+	public static final String RENDER = "render";
+	public static final String REPORT = "report";
+	public static final String RETURN = "return";
+	public static final String FOR_EACH = "forEach";
+	public static final String LONG = "long";
+	public static final String COLUMNS = "columns";
+	public static final String BATCH = "batch";
+	public static final String COPY = "copy";
+
+	//distinct shapes tracked, later shapes are counted under OTHER_SHAPE
+	private static final int MAX_SHAPES = 512;
+	private static final String OTHER_SHAPE = "<other>";
+	//shapes longer than this are cut, they only label the output
+	private static final int MAX_SHAPE_LENGTH = 200;
+
+	/*
+	 * lock-free log-linear histogram of nanosecond values
+	 */
+	static class Histogram{
+		//values below 16 have a bucket each, above that 16 buckets per power of two
+		private static final int SUB_BUCKETS = 16;
+		private static final int BUCKETS = (64 - 3) * SUB_BUCKETS;
+
+		private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+		private final AtomicLong _max = new AtomicLong();
+
+		void record(long value){
+			if (value < 0) value = 0;
+			this._counts.incrementAndGet(indexOf(value));
+			long max = this._max.get();
+			while (value > max && !this._max.compareAndSet(max, value))
+				max = this._max.get();
+		}
+
+		static int indexOf(long value){
+			if (value < SUB_BUCKETS) return (int) value;
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+			return (exponent - 3) * SUB_BUCKETS + sub;
+		}
+
+		//largest value that falls in the bucket
+		static long upperBound(int index){
+			if (index < SUB_BUCKETS) return index;
+			int exponent = index / SUB_BUCKETS + 3;
+			long sub = index % SUB_BUCKETS;
+			return ((SUB_BUCKETS + sub + 1) << (exponent - 4)) - 1;
+		}
+
+		/**
+		 * @param quantiles ascending values in [0, 1]
+		 * @return the bucket bound of each quantile, 0 when nothing was recorded
+		 */
+		long[] percentiles(double... quantiles){
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; ++i){
+				counts[i] = this._counts.get(i);
+				total += counts[i];
+			}//end for
+			long[] values = new long[quantiles.length];
+			if (total == 0) return values;
+			long seen = 0;
+			int q = 0;
+			long max = this._max.get();
+			for (int i = 0; i < BUCKETS && q < quantiles.length; ++i){
+				seen += counts[i];
+				while (q < quantiles.length && seen >= Math.max(1, (long) Math.ceil(quantiles[q] * total)))
+					values[q++] = Math.min(upperBound(i), max);
+			}//end for
+			return values;
+		}
+
+		long max(){
+			return this._max.get();
+		}
+	}//end Histogram
+
+	/*
+	 * everything recorded for one operation or operation and shape
+	 */
+	static class Series{
+		private final String _operation;
+		private final String _shape;
+		private final Histogram _latency = new Histogram();
+		private final LongAdder _count = new LongAdder();
+		private final LongAdder _nanos = new LongAdder();
+		private final LongAdder _rows = new LongAdder();
+		private final LongAdder _bytes = new LongAdder();
+		private final LongAdder _errors = new LongAdder();
+
+		Series(String operation, String shape){
+			this._operation = operation;
+			this._shape = shape;
+		}
+
+		void record(long nanos, long rows, long bytes){
+			this._latency.record(nanos);
+			this._count.increment();
+			this._nanos.add(nanos);
+			if (rows < 0) this._errors.increment();
+			else this._rows.add(rows);
+			this._bytes.add(bytes);
+		}
+	}//end Series
+
+	private final ConcurrentHashMap<String, Series> _operations = new ConcurrentHashMap<String, Series>();
+	//operation to the series of each of its shapes
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, Series>> _shapes = new ConcurrentHashMap<String, ConcurrentHashMap<String, Series>>();
+	private final AtomicInteger _shapeCount = new AtomicInteger();
+	//SQL text to its shape, so a statement is only normalized once
+	private final ConcurrentHashMap<String, String> _shapeOf = new ConcurrentHashMap<String, String>();
+	private final long _startMillis = System.currentTimeMillis();
+	private ScheduledExecutorService _exporter = null;
+	private Path _exportPath = null;
+
+	/**
+	 * Method to record one statement.
+	 *
+	 * @param operation one of the operation constants
+	 * @param sql the statement text
+	 * @param startNanos System.nanoTime() before the statement was sent
+	 * @param rows rows returned or affected, negative when the statement failed
+	 * @param bytes text bytes fetched, 0 when the caller read typed values
+	 */
+	public void record(String operation, String sql, long startNanos, long rows, long bytes){
+		long nanos = System.nanoTime() - startNanos;
+		Series op = this._operations.get(operation);
+		if (op == null) op = this._operations.computeIfAbsent(operation, k -> new Series(operation, null));
+		op.record(nanos, rows, bytes);
+
+		ConcurrentHashMap<String, Series> shapes = this._shapes.get(operation);
+		if (shapes == null) shapes = this._shapes.computeIfAbsent(operation, k -> new ConcurrentHashMap<String, Series>());
+		String shape = shapeOf(sql);
+		Series series = shapes.get(shape);
+		if (series == null){
+			if (this._shapeCount.get() >= MAX_SHAPES) shape = OTHER_SHAPE;
+			final String s = shape;
+			series = shapes.computeIfAbsent(s, k -> {
+				this._shapeCount.incrementAndGet();
+				return new Series(operation, s);
+			});
+		}//end if
+		series.record(nanos, rows, bytes);
+	}//end record
+
+	private String shapeOf(String sql){
+		String shape = this._shapeOf.get(sql);
+		if (shape != null) return shape;
+		shape = normalize(sql);
+		// dynamic SQL would grow the memo without bound
+		if (this._shapeOf.size() < 4 * MAX_SHAPES) this._shapeOf.put(sql, shape);
+		return shape;
+	}
+
+	/**
+	 * Method to reduce a SQL text to its shape: string and numeric literals
+	 * become '?', runs of whitespace one space.
+	 *
+	 * @param sql the statement text
+	 * @return the shape, at most MAX_SHAPE_LENGTH characters
+	 */
+	static String normalize(String sql){
+		StringBuilder sb = new StringBuilder(Math.min(sql.length(), MAX_SHAPE_LENGTH + 3));
+		int n = sql.length();
+		for (int i = 0; i < n && sb.length() < MAX_SHAPE_LENGTH; ++i){
+			char c = sql.charAt(i);
+			if (c == '\''){
+				// skips to the closing quote, '' is an escaped quote
+				for (++i; i < n; ++i){
+					if (sql.charAt(i) == '\''){
+						if (i + 1 < n && sql.charAt(i + 1) == '\'') ++i;
+						else break;
+					}//end if
+				}//end for
+				sb.append('?');
+			}else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))){
+				while (i + 1 < n && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) ++i;
+				sb.append('?');
+			}else if (Character.isWhitespace(c)){
+				if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') sb.append(' ');
+			}else{
+				sb.append(c);
+			}//end if
+		}//end for
+		int end = sb.length();
+		while (end > 0 && sb.charAt(end - 1) == ' ') --end;
+		sb.setLength(end);
+		if (sb.length() >= MAX_SHAPE_LENGTH) sb.append("...");
+		return sb.toString();
+	}
+
+	private static boolean isIdentifierPart(char c){
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	/**
+	 * Method to describe the recorded statements: one line per operation,
+	 * then one per shape, slowest total time first.
+	 *
+	 * @return a multi-line human readable summary
+	 */
+	public String getSummary(){
+		StringBuilder sb = new StringBuilder();
+		String format = "%-8s %8s %6s %10s %12s %9s %9s %9s %9s  %s%n";
+		sb.append(String.format(format, "op", "count", "errors", "rows", "bytes", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "shape"));
+		for (Series s : sorted(this._operations.values()))
+			appendLine(sb, s, "*");
+		sb.append('\n');
+		for (Series s : sorted(allShapes()))
+			appendLine(sb, s, s._shape.length() > 70 ? s._shape.substring(0, 67) + "..." : s._shape);
+		sb.append(String.format("since %tF %<tT", this._startMillis));
+		return sb.toString();
+	}
+
+	private static void appendLine(StringBuilder sb, Series s, String shape){
+		long[] p = s._latency.percentiles(0.5, 0.99, 0.999);
+		sb.append(String.format("%-8s %8d %6d %10d %12d %9.3f %9.3f %9.3f %9.3f  %s%n", s._operation,
+			s._count.sum(), s._errors.sum(), s._rows.sum(), s._bytes.sum(),
+			p[0] / 1e6, p[1] / 1e6, p[2] / 1e6, s._latency.max() / 1e6, shape));
+	}
+
+	private List<Series> allShapes(){
+		List<Series> list = new ArrayList<Series>();
+		for (ConcurrentHashMap<String, Series> shapes : this._shapes.values())
+			list.addAll(shapes.values());
+		return list;
+	}
+
+	private static List<Series> sorted(Collection<Series> series){
+		List<Series> list = new ArrayList<Series>(series);
+		list.sort((a, b) -> Long.compare(b._nanos.sum(), a._nanos.sum()));
+		return list;
+	}
+
+	/**
+	 * Method to write the metrics in the Prometheus text exposition format.
+	 * The series per operation are mechanicshop_query_*, the series per
+	 * operation and shape mechanicshop_query_shape_*, so summing either
+	 * family counts every statement once.
+	 *
+	 * @param out the destination, not closed
+	 * @throws java.io.IOException when writing failed
+	 */
+	public void writePrometheus(Writer out) throws IOException {
+		writeFamily(out, "mechanicshop_query", "", sorted(this._operations.values()));
+		writeFamily(out, "mechanicshop_query_shape", " by SQL shape", sorted(allShapes()));
+	}
+
+	private static void writeFamily(Writer out, String prefix, String by, List<Series> series) throws IOException {
+		out.write("# HELP " + prefix + "_seconds Statement latency" + by + ".\n");
+		out.write("# TYPE " + prefix + "_seconds summary\n");
+		for (Series s : series) writeSummary(out, prefix + "_seconds", s);
+		writeCounter(out, prefix + "_rows_total", "Rows returned or affected" + by + ".", series, 0);
+		writeCounter(out, prefix + "_bytes_total", "Characters of the text values fetched" + by + ".", series, 1);
+		writeCounter(out, prefix + "_errors_total", "Statements that failed" + by + ".", series, 2);
+	}
+
+	private static void writeSummary(Writer out, String name, Series s) throws IOException {
+		String labels = labels(s);
+		double[] quantiles = { 0.5, 0.99, 0.999 };
+		long[] p = s._latency.percentiles(quantiles);
+		for (int i = 0; i < quantiles.length; ++i)
+			out.write(name + "{" + labels + ",quantile=\"" + quantiles[i] + "\"} " + p[i] / 1e9 + "\n");
+		out.write(name + "_sum{" + labels + "} " + s._nanos.sum() / 1e9 + "\n");
+		out.write(name + "_count{" + labels + "} " + s._count.sum() + "\n");
+	}
+
+	private static void writeCounter(Writer out, String name, String help, List<Series> series, int which) throws IOException {
+		out.write("# HELP " + name + " " + help + "\n");
+		out.write("# TYPE " + name + " counter\n");
+		for (Series s : series){
+			LongAdder value = which == 0 ? s._rows : which == 1 ? s._bytes : s._errors;
+			out.write(name + "{" + labels(s) + "} " + value.sum() + "\n");
+		}//end for
+	}
+
+	private static String labels(Series s){
+		String labels = "op=\"" + escape(s._operation) + "\"";
+		return s._shape == null ? labels : labels + ",shape=\"" + escape(s._shape) + "\"";
+	}
+
+	private static String escape(String value){
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Method to write the metrics to the file every period, replacing it
+	 * atomically so a scraper never reads a partial file.
+	 *
+	 * @param file destination of the Prometheus text
+	 * @param periodMillis time between two exports
+	 */
+	public synchronized void startExport(String file, long periodMillis){
+		if (this._exporter != null) return;
+		Path path = Paths.get(file).toAbsolutePath();
+		this._exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "query-metrics-exporter");
+			t.setDaemon(true);
+			return t;
+		});
+		this._exporter.scheduleWithFixedDelay(() -> export(path), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		this._exportPath = path;
+	}
+
+	/**
+	 * Method to stop the periodic export after writing the file a last time.
+	 */
+	public synchronized void stopExport(){
+		if (this._exporter == null) return;
+		this._exporter.shutdownNow();
+		this._exporter = null;
+		export(this._exportPath);
+	}
+
+	/**
+	 * Method to write the metrics to the file once.
+	 *
+	 * @param path destination of the Prometheus text
+	 */
+	public void export(Path path){
+		try{
+			Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+			try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)){
+				writePrometheus(out);
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}catch (IOException e){
+			System.err.println("Unable to export metrics to " + path + ": " + e.getMessage());
+		}//end try
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+/**
+ * The report queries of menu options 6-10.  ListKCarsWithTheMostServices
+ * takes the number of cars as its only parameter; the others take none.
+ *
+ * Reports 6 and 8 read the service history through the views that append
+ * the archive to the hot tables, and the summaries of 9 and 10 count both.
+ *
+ * The long listings (6, 8 and 10) can also be read page by page with keyset
+ * pagination: rows are ordered by unique page keys, and the next page starts
+ * after the keys of the last row shown, so every page is an index range
+ * scan of the same cost.
+ *
+ */
+
+public enum Report{
+	BILL_LESS_THAN_100(6, "ListCustomersWithBillLessThan100",
+		"Customer.fname, Customer.lname, Closed_Request.bill, Service_Request.date, Closed_Request.comment",
+		"FROM Customer, Closed_Request_History AS Closed_Request, Service_Request_History AS Service_Request WHERE Closed_Request.bill < 100 AND Closed_Request.rid = Service_Request.rid AND Service_Request.customer_id = Customer.id",
+		null, "Closed_Request.wid", false),
+	MORE_THAN_20_CARS(7, "ListCustomersWithMoreThan20Cars",
+		"SELECT cars.fname, cars.lname, cars.numCars FROM (SELECT Owns.customer_id, Customer.fname, Customer.lname, COUNT(*) numCars FROM Owns,Customer WHERE Customer.id = Owns.customer_id GROUP BY Owns.customer_id, Customer.fname, Customer.lname) AS cars WHERE numCars > 20"),
+	CARS_BEFORE_1995(8, "ListCarsBefore1995With50000Milles",
+		"Car.make, Car.model, Car.year, Service_Request.odometer",
+		"FROM Car, Service_Request_History AS Service_Request WHERE Service_Request.car_vin = Car.vin AND Service_Request.odometer < 50000 AND Car.year < 1995",
+		null, "Service_Request.rid", false),
+	// Car_Service_Count is kept up to date by a trigger on Service_Request
+	K_MOST_SERVICED_CARS(9, "ListKCarsWithTheMostServices",
+		"SELECT make, model, R.services AS sreq FROM Car AS C, Car_Service_Count AS R WHERE R.car_vin = C.vin AND R.services > 0 ORDER BY R.services DESC LIMIT ?"),
+	// Customer_Bill_Total is kept up to date by a trigger on Closed_Request
+	TOTAL_BILL_DESCENDING(10, "ListCustomersInDescendingOrderOfTheirTotalBill",
+		"C.fname , C.lname, A.total",
+		"FROM Customer AS C, Customer_Bill_Total AS A WHERE C.id=A.customer_id AND A.closed > 0",
+		"A.total DESC", "A.total, A.customer_id", true);
+
+	//menu option
+	public final int option;
+	//name of the menu operation
+	public final String title;
+	public final String sql;
+	//number of page keys, 0 when the report cannot be paged
+	public final int keyCount;
+	//displayed columns followed by the page keys, first page and following ones
+	private final String _firstPageSql;
+	private final String _nextPageSql;
+	//the report without its ORDER BY, for counting
+	private final String _countSql;
+
+	Report(int option, String title, String sql){
+		this.option = option;
+		this.title = title;
+		this.sql = sql;
+		this.keyCount = 0;
+		this._firstPageSql = null;
+		this._nextPageSql = null;
+		this._countSql = null;
+	}
+
+	/*
+	 * a report that can be paged; keys must be unique over its rows and are
+	 * all ascending or all descending, so a row comparison seeks past them
+	 */
+	Report(int option, String title, String columns, String fromWhere, String orderBy, String keys, boolean descending){
+		this.option = option;
+		this.title = title;
+		this.sql = "SELECT " + columns + " " + fromWhere + (orderBy == null ? "" : " ORDER BY " + orderBy);
+		String[] names = keys.split(",");
+		this.keyCount = names.length;
+		StringBuilder order = new StringBuilder();
+		StringBuilder marks = new StringBuilder();
+		for (int i = 0; i < names.length; ++i){
+			if (i > 0){
+				order.append(", ");
+				marks.append(", ");
+			}//end if
+			order.append(names[i].trim()).append(descending ? " DESC" : "");
+			marks.append('?');
+		}//end for
+		String select = "SELECT " + columns + ", " + keys + " " + fromWhere;
+		String tail = " ORDER BY " + order + " LIMIT ?";
+		this._firstPageSql = select + tail;
+		this._nextPageSql = select + " AND (" + keys + ") " + (descending ? "<" : ">") + " (" + marks + ")" + tail;
+		this._countSql = "SELECT COUNT(*) " + fromWhere;
+	}
+
+	public boolean isPageable(){
+		return this.keyCount > 0;
+	}
+
+	/**
+	 * @return the query of one page: the displayed columns, then the page
+	 *         keys; its parameters are the keys of the previous page's last
+	 *         row, unless first, then the page size
+	 */
+	public String getPageSql(boolean first){
+		return first ? this._firstPageSql : this._nextPageSql;
+	}
+
+	public String getCountSql(){
+		return this._countSql;
+	}
+
+	public int getParameterCount(){
+		int count = 0;
+		for (int i = 0; i < this.sql.length(); ++i)
+			if (this.sql.charAt(i) == '?') ++count;
+		return count;
+	}
+
+	/**
+	 * Method to find a report by menu option or title (case insensitive).
+	 *
+	 * @param name the option number, title or enum name
+	 * @return the report
+	 * @throws IllegalArgumentException when no report matches
+	 */
+	public static Report parse(String name){
+		String key = name.trim();
+		for (Report report : values())
+			if (key.equals(Integer.toString(report.option)) || key.equalsIgnoreCase(report.title) || key.equalsIgnoreCase(report.name()))
+				return report;
+		throw new IllegalArgumentException("Unknown report " + name);
+	}
+}
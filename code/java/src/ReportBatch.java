@@ -0,0 +1,165 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs several of the reports of options 6-10 at once, each on
+ * its own pooled connection, and streams each result to its own file.  All
+ * of them read the same point in time: a repeatable read transaction
+ * exports its snapshot and stays open while every report imports it with
+ * SET TRANSACTION SNAPSHOT, so the wall-clock time is about that of the
+ * slowest report rather than the sum of all of them.  The connection pool
+ * needs one connection per report plus one for the exporting transaction;
+ * with fewer, reports wait for a connection and run after the others.
+ *
+ */
+
+public class ReportBatch{
+
+	/*
+	 * one report of the batch and how it went
+	 */
+	private static class Run{
+		private final Report _report;
+		private final Object[] _params;
+		private final File _file;
+		private int _rows = -1;
+		private long _nanos = 0;
+
+		Run(Report report, Object[] params, File file){
+			this._report = report;
+			this._params = params;
+			this._file = file;
+		}
+	}
+
+	private final MechanicShop _esql;
+	private final File _dir;
+
+	public ReportBatch(MechanicShop esql, File dir){
+		this._esql = esql;
+		this._dir = dir;
+	}
+
+	/**
+	 * Method to run the reports concurrently on one snapshot and print the
+	 * time of each and of the whole batch.
+	 *
+	 * @param reports option number or title of each report, with k after a
+	 *        comma for option 9 (default 10); all five when empty
+	 * @return the number of reports that failed
+	 * @throws java.sql.SQLException when the snapshot could not be exported
+	 * @throws java.io.IOException when the output directory could not be
+	 *         created
+	 */
+	public int run(String... reports) throws SQLException, IOException {
+		if (!this._dir.isDirectory() && !this._dir.mkdirs())
+			throw new IOException("Unable to create " + this._dir);
+		ResultRenderer.Format format = this._esql.getOutputFormat();
+		String extension = format == ResultRenderer.Format.TABLE ? "txt" : format.name().toLowerCase();
+		List<Run> runs = new ArrayList<Run>();
+		if (reports.length == 0){
+			reports = new String[Report.values().length];
+			for (int i = 0; i < reports.length; ++i) reports[i] = Integer.toString(Report.values()[i].option);
+		}//end if
+		for (String name : reports){
+			int comma = name.indexOf(',');
+			Report report = Report.parse(comma < 0 ? name : name.substring(0, comma));
+			String file = report.option + "-" + report.title;
+			Object[] params = new Object[0];
+			if (report.getParameterCount() > 0){
+				params = new Object[]{ comma < 0 ? 10 : Integer.parseInt(name.substring(comma + 1).trim()) };
+				file += "-" + params[0];
+			}//end if
+			runs.add(new Run(report, params, new File(this._dir, file + "." + extension)));
+		}//end for
+
+		long start = System.nanoTime();
+		int failed = 0;
+		ExecutorService workers = Executors.newFixedThreadPool(runs.size());
+		// the exporting transaction must outlive every import of its snapshot
+		this._esql.beginTransaction();
+		try{
+			this._esql.executeUpdate("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+			final String[] snapshot = new String[1];
+			this._esql.executeQueryForEach(row -> snapshot[0] = row.getString(1), "SELECT pg_export_snapshot()");
+
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (Run run : runs)
+				futures.add(workers.submit(() -> {
+					runReport(run, snapshot[0], format);
+					return null;
+				}));
+			for (int i = 0; i < runs.size(); ++i){
+				Run run = runs.get(i);
+				try{
+					futures.get(i).get();
+					System.out.printf("%2d. %-48s %9d row(s) %10.1f ms  %s%n", run._report.option, run._report.title,
+						run._rows, run._nanos / 1e6, run._file);
+				}catch (ExecutionException e){
+					++failed;
+					System.err.printf("%2d. %-48s failed: %s%n", run._report.option, run._report.title, e.getCause().getMessage());
+				}//end try
+			}//end for
+			this._esql.commit();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while running the reports");
+		}finally{
+			workers.shutdownNow();
+			this._esql.rollback();
+		}
+
+		long sum = 0;
+		for (Run run : runs) sum += run._nanos;
+		System.out.printf("%d report(s), %d failed: %.1f ms wall clock, %.1f ms of reports%n",
+			runs.size(), failed, (System.nanoTime() - start) / 1e6, sum / 1e6);
+		return failed;
+	}//end run
+
+	/*
+	 * runs one report in a transaction of its own on the shared snapshot
+	 */
+	private void runReport(Run run, String snapshot, ResultRenderer.Format format) throws SQLException, IOException {
+		long start = System.nanoTime();
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run._file), StandardCharsets.UTF_8), 1 << 16)){
+			this._esql.beginTransaction();
+			try{
+				this._esql.executeUpdate("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+				// SET takes no parameters, so the id is quoted as a literal;
+				// the text is new for every batch, so it is not cached
+				this._esql.executeUncached("SET TRANSACTION SNAPSHOT '" + snapshot.replace("'", "''") + "'");
+				run._rows = this._esql.runReport(run._report, new ResultRenderer(format, out), run._params);
+				this._esql.commit();
+			}finally{
+				this._esql.rollback();
+			}
+		}finally{
+			run._nanos = System.nanoTime() - start;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class shows a long report one page at a time.  Each page is read
+ * with keyset pagination: it starts after the page keys of the last row of
+ * the page before it, so page N is as cheap as page 1.  The keys where each
+ * page shown so far started are kept, so going back re-reads that page the
+ * same way.  The total row count is only computed when asked for.
+ *
+ */
+
+public class ReportBrowser{
+	private final MechanicShop _esql;
+	private final Report _report;
+	private final int _pageSize;
+	//keys of the row before each page shown so far, null for the first page
+	private final List<Object[]> _pageStarts = new ArrayList<Object[]>();
+	private long _count = -1;
+
+	public ReportBrowser(MechanicShop esql, Report report, int pageSize){
+		if (!report.isPageable())
+			throw new IllegalArgumentException(report.title + " cannot be paged");
+		this._esql = esql;
+		this._report = report;
+		this._pageSize = Math.max(1, pageSize);
+		this._pageStarts.add(null);
+	}
+
+	/**
+	 * Method to read one page of the report.
+	 *
+	 * @param after page keys of the row before the page, null for the first
+	 *        page
+	 * @return up to pageSize rows: the report columns followed by the page keys
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ColumnarResult fetchPage(Object[] after) throws SQLException {
+		if (after == null)
+			return this._esql.executeQueryAndReturnColumns(this._report.getPageSql(true), this._pageSize);
+		Object[] params = new Object[after.length + 1];
+		System.arraycopy(after, 0, params, 0, after.length);
+		params[after.length] = this._pageSize;
+		return this._esql.executeQueryAndReturnColumns(this._report.getPageSql(false), params);
+	}
+
+	/**
+	 * Method to count the rows of the whole report, once per browser.
+	 *
+	 * @return the number of rows
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public long getCount() throws SQLException {
+		if (this._count < 0)
+			this._count = this._esql.executeQueryForLong(0, this._report.getCountSql());
+		return this._count;
+	}
+
+	/**
+	 * Method to show the first page and then follow the user's commands
+	 * until they quit.
+	 *
+	 * @param in the user's commands
+	 * @throws java.sql.SQLException when a page could not be read
+	 * @throws java.io.IOException when the output could not be written
+	 */
+	public void run(BufferedReader in) throws SQLException, IOException {
+		int page = 0;
+		ColumnarResult rows = fetchPage(null);
+		while (true){
+			ResultRenderer renderer = this._esql.getConsoleRenderer();
+			renderer.render(rows, rows.getColumnCount() - this._report.keyCount);
+			long first = (long) page * this._pageSize;
+			System.out.print("page " + (page + 1) + ", row(s) " + (rows.getRowCount() == 0 ? 0 : first + 1) + "-" + (first + rows.getRowCount()));
+			System.out.println(this._count < 0 ? "" : " of " + this._count);
+
+			System.out.print("[n]ext, [p]revious, [c]ount, [q]uit: ");
+			String command = in.readLine();
+			if (command == null) return;
+			switch (command.trim().toLowerCase()){
+				case "":
+				case "n":
+					if (rows.getRowCount() < this._pageSize){
+						System.out.println("This is the last page.");
+						break;
+					}//end if
+					Object[] last = keysOf(rows, rows.getRowCount() - 1);
+					ColumnarResult next = fetchPage(last);
+					if (next.getRowCount() == 0){
+						System.out.println("This is the last page.");
+						break;
+					}//end if
+					++page;
+					if (this._pageStarts.size() == page) this._pageStarts.add(last);
+					else this._pageStarts.set(page, last);
+					rows = next;
+					break;
+				case "p":
+					if (page == 0){
+						System.out.println("This is the first page.");
+						break;
+					}//end if
+					--page;
+					rows = fetchPage(this._pageStarts.get(page));
+					break;
+				case "c":
+					getCount();
+					break;
+				case "q":
+					return;
+				default:
+					System.out.println("Your input is invalid!");
+			}
+		}//end while
+	}//end run
+
+	private Object[] keysOf(ColumnarResult rows, int row){
+		Object[] keys = new Object[this._report.keyCount];
+		int firstKey = rows.getColumnCount() - keys.length + 1;
+		for (int i = 0; i < keys.length; ++i)
+			keys[i] = rows.getObject(row, firstKey + i);
+		return keys;
+	}
+}
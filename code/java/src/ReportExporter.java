@@ -0,0 +1,118 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class exports a report of options 6-10, or a whole table, to a file
+ * with COPY (query) TO STDOUT.  The rows arrive already formatted by the
+ * server and their bytes go straight from the driver to a buffered file
+ * channel, gzip compressed when the file name ends in .gz, so nothing is
+ * created per row on this side.
+ *
+ * The format follows the file name: .csv is CSV with a header line, .json
+ * or .jsonl one JSON object per line, named by column.
+ *
+ */
+
+public class ReportExporter{
+
+	public enum Format{ CSV, JSON }
+
+	//a table name, left for the server to resolve
+	private static final String TABLE_NAME = "[A-Za-z_][A-Za-z0-9_]*";
+
+	private final MechanicShop _esql;
+
+	public ReportExporter(MechanicShop esql){
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to export a report or table to a file and print the rows,
+	 * bytes and throughput.
+	 *
+	 * @param source a report option or title, with k after a comma for
+	 *        option 9 (default 10), or a table name
+	 * @param file the output file: name.csv, name.json or name.jsonl, with an
+	 *        optional .gz after it
+	 * @return the number of rows exported
+	 * @throws java.sql.SQLException when the COPY failed
+	 * @throws java.io.IOException when the file could not be written
+	 */
+	public long export(String source, File file) throws SQLException, IOException {
+		String name = file.getName().toLowerCase();
+		boolean gzip = name.endsWith(".gz");
+		if (gzip) name = name.substring(0, name.length() - 3);
+		Format format;
+		if (name.endsWith(".csv")) format = Format.CSV;
+		else if (name.endsWith(".json") || name.endsWith(".jsonl")) format = Format.JSON;
+		else throw new IllegalArgumentException("The file name must end in .csv, .json or .jsonl, optionally followed by .gz");
+
+		String sql = copySql(querySql(source), format);
+		long start = System.nanoTime();
+		long rows;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+				OutputStream out = gzip ? new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16)
+					: new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16)){
+			rows = this._esql.copyOut(sql, out);
+		}
+		long nanos = System.nanoTime() - start;
+		System.out.printf("%s: %d rows, %d bytes in %.1f ms, %.0f rows/s%n", file, rows, Files.size(file.toPath()),
+			nanos / 1e6, rows / (nanos / 1e9));
+		return rows;
+	}//end export
+
+	/**
+	 * Method to find the query of a report or table.  COPY takes no
+	 * parameters, so k of option 9 is written into the query.
+	 *
+	 * @param source a report option or title, with k after a comma for
+	 *        option 9, or a table name
+	 * @return the query
+	 * @throws IllegalArgumentException when source is neither
+	 */
+	static String querySql(String source){
+		int comma = source.indexOf(',');
+		Report report;
+		try{
+			report = Report.parse(comma < 0 ? source : source.substring(0, comma));
+		}catch (IllegalArgumentException e){
+			if (!source.trim().matches(TABLE_NAME)) throw new IllegalArgumentException("Unknown report or table " + source);
+			return "SELECT * FROM " + source.trim();
+		}//end try
+		if (report.getParameterCount() == 0) return report.sql;
+		int k = comma < 0 ? 10 : Integer.parseInt(source.substring(comma + 1).trim());
+		return report.sql.replace("?", Integer.toString(k));
+	}
+
+	/**
+	 * Method to wrap a query in the COPY statement of a format.  JSON lines
+	 * are copied as CSV with quote and delimiter characters that the JSON
+	 * text escapes, so the lines come out as the server wrote them.
+	 */
+	static String copySql(String query, Format format){
+		if (format == Format.CSV)
+			return "COPY (" + query + ") TO STDOUT WITH (FORMAT csv, HEADER)";
+		return "COPY (SELECT row_to_json(Q) FROM (" + query + ") AS Q) TO STDOUT WITH (FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')";
+	}
+}
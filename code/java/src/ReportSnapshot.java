@@ -0,0 +1,755 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class runs the reports of menu options 6-10 without the database,
+ * over an in-memory copy of the columns they read, taken from the code/data
+ * CSV files or from a snapshot of the database.  Every column is a
+ * primitive int array: dates are days since 1970-01-01 and names, makes,
+ * models and comments are codes into a dictionary holding each distinct
+ * string once.  Cars are numbered as they are loaded, and Owns and
+ * Service_Request hold that number instead of the VIN.
+ *
+ * A report probes hash tables (customer id and rid to row) built once per
+ * snapshot, and its scan and aggregation are split over the worker threads,
+ * one range of rows each, with the partial counts and sums merged at the
+ * end.  The rows and values are those of the SQL versions, so the TSV and
+ * CSV output is the same; where the SQL leaves the order open the rows come
+ * in page key order (see Report), ties of 9 by the order the cars were
+ * loaded and of 10 by descending customer id.  TABLE widths follow the
+ * values, as for any result read earlier.
+ *
+ * Usage: java ReportSnapshot &lt;csv dir&gt; [report[,k] ...]
+ */
+
+public class ReportSnapshot{
+
+	/*
+	 * a growable int column
+	 */
+	private static class Ints{
+		private int[] _values = new int[1024];
+		private int _size = 0;
+
+		void add(int value){
+			if (this._size == this._values.length) this._values = Arrays.copyOf(this._values, this._size * 2);
+			this._values[this._size++] = value;
+		}
+
+		void trim(){
+			this._values = Arrays.copyOf(this._values, this._size);
+		}
+	}
+
+	/*
+	 * the distinct strings of some columns, referred to by code
+	 */
+	private static class Dictionary{
+		private final HashMap<String, Integer> _codes = new HashMap<String, Integer>();
+		private String[] _values = new String[64];
+		private int _size = 0;
+
+		int encode(String value){
+			Integer code = this._codes.get(value);
+			if (code != null) return code;
+			if (this._size == this._values.length) this._values = Arrays.copyOf(this._values, this._size * 2);
+			this._values[this._size] = value;
+			this._codes.put(value, this._size);
+			return this._size++;
+		}
+
+		String decode(int code){
+			return this._values[code];
+		}
+	}
+
+	/*
+	 * open addressing hash table from a unique int key to its row
+	 */
+	private static class IntIndex{
+		private final int[] _keys;
+		//row + 1, 0 for an empty slot
+		private final int[] _rows;
+		private final int _mask;
+
+		IntIndex(int[] keys, int count){
+			int capacity = Integer.highestOneBit(Math.max(1, count) * 2) << 1;
+			this._keys = new int[capacity];
+			this._rows = new int[capacity];
+			this._mask = capacity - 1;
+			for (int row = 0; row < count; ++row){
+				int slot = slot(keys[row]);
+				while (this._rows[slot] != 0 && this._keys[slot] != keys[row]) slot = (slot + 1) & this._mask;
+				if (this._rows[slot] != 0) continue; // keeps the first row of a key
+				this._keys[slot] = keys[row];
+				this._rows[slot] = row + 1;
+			}//end for
+		}
+
+		int get(int key){
+			for (int slot = slot(key); this._rows[slot] != 0; slot = (slot + 1) & this._mask)
+				if (this._keys[slot] == key) return this._rows[slot] - 1;
+			return -1;
+		}
+
+		private int slot(int key){
+			int h = key * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & this._mask;
+		}
+	}
+
+	/*
+	 * the work on rows [from, to) of a table
+	 */
+	private interface RangeTask<T>{
+		T run(int from, int to);
+	}
+
+	//rows below which a scan is not split
+	private static final int MIN_RANGE = 8192;
+
+	private final ExecutorService _workers;
+	private final int _threads;
+
+	//Customer; fname and lname as SQL returns CHAR(32), blank padded
+	private final Ints _customerId = new Ints();
+	private final Ints _customerFname = new Ints();
+	private final Ints _customerLname = new Ints();
+	private final Dictionary _names = new Dictionary();
+	//Car, numbered in load order
+	private final HashMap<String, Integer> _carByVin = new HashMap<String, Integer>();
+	private final Ints _carMake = new Ints();
+	private final Ints _carModel = new Ints();
+	private final Ints _carYear = new Ints();
+	private final Dictionary _makesAndModels = new Dictionary();
+	//Owns
+	private final Ints _ownsCustomer = new Ints();
+	private final Ints _ownsCar = new Ints();
+	//Service_Request
+	private final Ints _requestRid = new Ints();
+	private final Ints _requestCustomer = new Ints();
+	private final Ints _requestCar = new Ints();
+	private final Ints _requestDate = new Ints();
+	private final Ints _requestOdometer = new Ints();
+	//Closed_Request
+	private final Ints _closedWid = new Ints();
+	private final Ints _closedRid = new Ints();
+	private final Ints _closedComment = new Ints();
+	private final Ints _closedBill = new Ints();
+	private final Dictionary _comments = new Dictionary();
+	//hash join build sides, made once the tables are loaded
+	private IntIndex _customerById = null;
+	private IntIndex _requestByRid = null;
+
+	private ReportSnapshot(int threads){
+		this._threads = Math.max(1, threads);
+		this._workers = Executors.newFixedThreadPool(this._threads, r -> {
+			Thread t = new Thread(r, "report-snapshot");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1){
+			System.err.println("Usage: java ReportSnapshot <csv dir> [report[,k] ...]");
+			return;
+		}//end if
+		ReportSnapshot snapshot = fromCsv(new File(args[0]), Runtime.getRuntime().availableProcessors());
+		try{
+			Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+			ResultRenderer renderer = new ResultRenderer(ResultRenderer.Format.parse(System.getProperty("mechanicshop.output.format", "tsv")), out);
+			snapshot.runAll(renderer, Arrays.copyOfRange(args, 1, args.length));
+		}finally{
+			snapshot.close();
+		}
+	}
+
+	/**
+	 * Method to load the tables the reports read from the code/data CSV
+	 * files, which are in the COPY text format BulkLoader streams.
+	 *
+	 * @param dir the directory of the CSV files
+	 * @param threads worker threads of the reports
+	 * @return the snapshot
+	 * @throws java.io.IOException when a file could not be read or a line is
+	 *         not valid
+	 */
+	public static ReportSnapshot fromCsv(File dir, int threads) throws IOException {
+		ReportSnapshot s = new ReportSnapshot(threads);
+		long start = System.nanoTime();
+		try{
+			// customers and cars first, the rows that refer to them after
+			List<Future<Void>> loads = new ArrayList<Future<Void>>();
+			loads.add(s._workers.submit(() -> s.readCsv(new File(dir, "customer.csv"), 5, f ->
+				s.addCustomer(Integer.parseInt(f[0].trim()), f[1], f[2]))));
+			loads.add(s._workers.submit(() -> s.readCsv(new File(dir, "car.csv"), 4, f ->
+				s.addCar(f[0], f[1], f[2], Integer.parseInt(f[3].trim())))));
+			s.await(loads);
+			loads.add(s._workers.submit(() -> s.readCsv(new File(dir, "owns.csv"), 3, f ->
+				s.addOwnership(Integer.parseInt(f[1].trim()), f[2]))));
+			loads.add(s._workers.submit(() -> s.readCsv(new File(dir, "service_request.csv"), 6, f ->
+				s.addRequest(Integer.parseInt(f[0].trim()), Integer.parseInt(f[1].trim()), f[2],
+					(int) LocalDate.parse(BulkLoader.normalizeDate(f[3].trim())).toEpochDay(), Integer.parseInt(f[4].trim())))));
+			loads.add(s._workers.submit(() -> s.readCsv(new File(dir, "closed_request.csv"), 6, f ->
+				s.addClosed(Integer.parseInt(f[0].trim()), Integer.parseInt(f[1].trim()), f[4], Integer.parseInt(f[5].trim())))));
+			s.await(loads);
+		}catch (IOException | RuntimeException e){
+			s.close();
+			throw e;
+		}//end try
+		s.seal();
+		System.err.printf("%s loaded from %s in %.1f ms%n", s.getStats(), dir, (System.nanoTime() - start) / 1e6);
+		return s;
+	}
+
+	/**
+	 * Method to copy the tables the reports read from the database, all in
+	 * one repeatable read transaction so they are consistent with each other.
+	 *
+	 * @param esql the database
+	 * @param threads worker threads of the reports
+	 * @return the snapshot
+	 * @throws java.sql.SQLException when a table could not be read
+	 */
+	public static ReportSnapshot fromDatabase(MechanicShop esql, int threads) throws SQLException {
+		ReportSnapshot s = new ReportSnapshot(threads);
+		long start = System.nanoTime();
+		esql.beginTransaction();
+		try{
+			esql.executeUpdate("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+			esql.executeQueryForEach(row -> s.addCustomer(row.getInt(1), row.getString(2), row.getString(3)),
+				"SELECT id, fname, lname FROM Customer");
+			esql.executeQueryForEach(row -> s.addCar(row.getString(1), row.getString(2), row.getString(3), row.getInt(4)),
+				"SELECT vin, make, model, year FROM Car");
+			esql.executeQueryForEach(row -> s.addOwnership(row.getInt(1), row.getString(2)),
+				"SELECT customer_id, car_vin FROM Owns");
+			esql.executeQueryForEach(row -> s.addRequest(row.getInt(1), row.getInt(2), row.getString(3),
+					(int) row.getDate(4).toLocalDate().toEpochDay(), row.getInt(5)),
+				"SELECT rid, customer_id, car_vin, date, odometer FROM Service_Request_History");
+			esql.executeQueryForEach(row -> s.addClosed(row.getInt(1), row.getInt(2), row.getString(3), row.getInt(4)),
+				"SELECT wid, rid, comment, bill FROM Closed_Request_History");
+			esql.commit();
+		}catch (SQLException | RuntimeException e){
+			s.close();
+			throw e;
+		}finally{
+			esql.rollback();
+		}
+		s.seal();
+		System.err.printf("%s loaded from the database in %.1f ms%n", s.getStats(), (System.nanoTime() - start) / 1e6);
+		return s;
+	}
+
+	public void close(){
+		this._workers.shutdownNow();
+	}
+
+	public String getStats(){
+		long bytes = 4L * (this._customerId._size * 3 + this._carYear._size * 3 + this._ownsCar._size * 2
+			+ this._requestRid._size * 5 + this._closedWid._size * 4);
+		return String.format("%d customers, %d cars, %d ownerships, %d requests, %d closed (%.1f MB of columns; "
+			+ "%d distinct names, %d makes and models, %d comments)",
+			this._customerId._size, this._carYear._size, this._ownsCar._size, this._requestRid._size, this._closedWid._size,
+			bytes / 1048576.0, this._names._size, this._makesAndModels._size, this._comments._size);
+	}
+
+	/**
+	 * Method to run reports and write them in the renderer's format, each
+	 * followed by its row count and time on standard error.
+	 *
+	 * @param renderer the format and destination of the rows
+	 * @param reports option number or title of each report, with k after a
+	 *        comma for option 9 (default 10); all five when empty
+	 * @throws java.io.IOException when the output could not be written
+	 */
+	public void runAll(ResultRenderer renderer, String... reports) throws IOException {
+		if (reports.length == 0){
+			reports = new String[Report.values().length];
+			for (int i = 0; i < reports.length; ++i) reports[i] = Integer.toString(Report.values()[i].option);
+		}//end if
+		for (String name : reports){
+			int comma = name.indexOf(',');
+			Report report = Report.parse(comma < 0 ? name : name.substring(0, comma));
+			long start = System.nanoTime();
+			int rowCount = report.getParameterCount() == 0 ? runReport(report, renderer)
+				: runReport(report, renderer, comma < 0 ? 10 : Integer.parseInt(name.substring(comma + 1).trim()));
+			System.err.printf("%d. %s: %d row(s) in %.1f ms%n", report.option, report.title, rowCount, (System.nanoTime() - start) / 1e6);
+		}//end for
+	}
+
+	/**
+	 * Method to run one of the reports of options 6-10 and write its rows.
+	 *
+	 * @param report the report to run
+	 * @param renderer the format and destination of the rows
+	 * @param params the report parameters (k for ListKCarsWithTheMostServices)
+	 * @return the number of rows written
+	 * @throws java.io.IOException when the output could not be written
+	 */
+	public int runReport(Report report, ResultRenderer renderer, Object... params) throws IOException {
+		ColumnarResult result = run(report, params);
+		return renderer.render(result, result.getColumnCount());
+	}
+
+	/**
+	 * Method to run one of the reports of options 6-10.
+	 *
+	 * @param report the report to run
+	 * @param params the report parameters (k for ListKCarsWithTheMostServices)
+	 * @return the rows, with the column names and kinds of the SQL version
+	 */
+	public ColumnarResult run(Report report, Object... params){
+		if (params.length != report.getParameterCount())
+			throw new IllegalArgumentException(report.title + " takes " + report.getParameterCount() + " parameter(s)");
+		switch (report){
+			case BILL_LESS_THAN_100: return billLessThan100();
+			case MORE_THAN_20_CARS: return moreThan20Cars();
+			case CARS_BEFORE_1995: return carsBefore1995();
+			case K_MOST_SERVICED_CARS: return mostServicedCars(((Number) params[0]).intValue());
+			default: return totalBillDescending();
+		}
+	}//end run
+
+	/*
+	 * 6: closed requests billed under 100, with the customer and request date
+	 */
+	private ColumnarResult billLessThan100(){
+		int[] bill = this._closedBill._values, rid = this._closedRid._values, requestCustomer = this._requestCustomer._values;
+		int[] rows = concat(parallel(this._closedWid._size, (from, to) -> {
+			Ints found = new Ints();
+			for (int i = from; i < to; ++i){
+				if (bill[i] >= 100) continue;
+				int request = this._requestByRid.get(rid[i]);
+				if (request >= 0 && this._customerById.get(requestCustomer[request]) >= 0) found.add(i);
+			}//end for
+			return found;
+		}));
+		sortByKey(rows, this._closedWid._values);
+
+		int n = rows.length;
+		String[] fname = new String[n], lname = new String[n], comment = new String[n];
+		int[] bills = new int[n], date = new int[n];
+		for (int j = 0; j < n; ++j){
+			int i = rows[j];
+			int request = this._requestByRid.get(rid[i]);
+			int customer = this._customerById.get(requestCustomer[request]);
+			fname[j] = this._names.decode(this._customerFname._values[customer]);
+			lname[j] = this._names.decode(this._customerLname._values[customer]);
+			bills[j] = bill[i];
+			date[j] = this._requestDate._values[request];
+			comment[j] = this._comments.decode(this._closedComment._values[i]);
+		}//end for
+		return ColumnarResult.of(new String[]{ "fname", "lname", "bill", "date", "comment" },
+			new ColumnarResult.Kind[]{ ColumnarResult.Kind.STRING, ColumnarResult.Kind.STRING, ColumnarResult.Kind.INT,
+				ColumnarResult.Kind.DATE, ColumnarResult.Kind.STRING },
+			new Object[]{ fname, lname, bills, date, comment }, n);
+	}
+
+	/*
+	 * 7: customers owning more than 20 cars, by customer id
+	 */
+	private ColumnarResult moreThan20Cars(){
+		int customers = this._customerId._size;
+		int[] ownsCustomer = this._ownsCustomer._values;
+		int[] cars = new int[customers];
+		for (int[] partial : parallel(this._ownsCar._size, (from, to) -> {
+			int[] counts = new int[customers];
+			for (int i = from; i < to; ++i){
+				int customer = this._customerById.get(ownsCustomer[i]);
+				if (customer >= 0) ++counts[customer];
+			}//end for
+			return counts;
+		}))
+			for (int c = 0; c < customers; ++c) cars[c] += partial[c];
+
+		Ints found = new Ints();
+		for (int c = 0; c < customers; ++c)
+			if (cars[c] > 20) found.add(c);
+		found.trim();
+		int[] rows = found._values;
+		sortByKey(rows, this._customerId._values);
+
+		int n = rows.length;
+		String[] fname = new String[n], lname = new String[n];
+		long[] numCars = new long[n];
+		for (int j = 0; j < n; ++j){
+			fname[j] = this._names.decode(this._customerFname._values[rows[j]]);
+			lname[j] = this._names.decode(this._customerLname._values[rows[j]]);
+			numCars[j] = cars[rows[j]];
+		}//end for
+		return ColumnarResult.of(new String[]{ "fname", "lname", "numcars" },
+			new ColumnarResult.Kind[]{ ColumnarResult.Kind.STRING, ColumnarResult.Kind.STRING, ColumnarResult.Kind.LONG },
+			new Object[]{ fname, lname, numCars }, n);
+	}
+
+	/*
+	 * 8: requests under 50000 miles for cars made before 1995
+	 */
+	private ColumnarResult carsBefore1995(){
+		int[] odometer = this._requestOdometer._values, car = this._requestCar._values, year = this._carYear._values;
+		int[] rows = concat(parallel(this._requestRid._size, (from, to) -> {
+			Ints found = new Ints();
+			for (int i = from; i < to; ++i)
+				if (odometer[i] < 50000 && year[car[i]] < 1995) found.add(i);
+			return found;
+		}));
+		sortByKey(rows, this._requestRid._values);
+
+		int n = rows.length;
+		String[] make = new String[n], model = new String[n];
+		int[] years = new int[n], odometers = new int[n];
+		for (int j = 0; j < n; ++j){
+			int c = car[rows[j]];
+			make[j] = this._makesAndModels.decode(this._carMake._values[c]);
+			model[j] = this._makesAndModels.decode(this._carModel._values[c]);
+			years[j] = year[c];
+			odometers[j] = odometer[rows[j]];
+		}//end for
+		return ColumnarResult.of(new String[]{ "make", "model", "year", "odometer" },
+			new ColumnarResult.Kind[]{ ColumnarResult.Kind.STRING, ColumnarResult.Kind.STRING, ColumnarResult.Kind.INT, ColumnarResult.Kind.INT },
+			new Object[]{ make, model, years, odometers }, n);
+	}
+
+	/*
+	 * 9: the k cars with the most service requests
+	 */
+	private ColumnarResult mostServicedCars(int k){
+		if (k < 0) throw new IllegalArgumentException("LIMIT must not be negative");
+		int cars = this._carYear._size;
+		int[] car = this._requestCar._values;
+		long[] services = new long[cars];
+		for (long[] partial : parallel(this._requestRid._size, (from, to) -> {
+			long[] counts = new long[cars];
+			for (int i = from; i < to; ++i) ++counts[car[i]];
+			return counts;
+		}))
+			for (int c = 0; c < cars; ++c) services[c] += partial[c];
+
+		Integer[] serviced = positive(services);
+		Arrays.sort(serviced, (a, b) -> services[a] != services[b] ? Long.compare(services[b], services[a]) : Integer.compare(a, b));
+		int n = Math.min(k, serviced.length);
+		String[] make = new String[n], model = new String[n];
+		long[] sreq = new long[n];
+		for (int j = 0; j < n; ++j){
+			make[j] = this._makesAndModels.decode(this._carMake._values[serviced[j]]);
+			model[j] = this._makesAndModels.decode(this._carModel._values[serviced[j]]);
+			sreq[j] = services[serviced[j]];
+		}//end for
+		return ColumnarResult.of(new String[]{ "make", "model", "sreq" },
+			new ColumnarResult.Kind[]{ ColumnarResult.Kind.STRING, ColumnarResult.Kind.STRING, ColumnarResult.Kind.LONG },
+			new Object[]{ make, model, sreq }, n);
+	}
+
+	/*
+	 * 10: every customer with a closed request, by total bill
+	 */
+	private ColumnarResult totalBillDescending(){
+		int customers = this._customerId._size;
+		int[] bill = this._closedBill._values, rid = this._closedRid._values, requestCustomer = this._requestCustomer._values;
+		long[] total = new long[customers];
+		long[] closed = new long[customers];
+		for (long[] partial : parallel(this._closedWid._size, (from, to) -> {
+			// totals then counts
+			long[] sums = new long[2 * customers];
+			for (int i = from; i < to; ++i){
+				int request = this._requestByRid.get(rid[i]);
+				int customer = request < 0 ? -1 : this._customerById.get(requestCustomer[request]);
+				if (customer < 0) continue;
+				sums[customer] += bill[i];
+				++sums[customers + customer];
+			}//end for
+			return sums;
+		}))
+			for (int c = 0; c < customers; ++c){
+				total[c] += partial[c];
+				closed[c] += partial[customers + c];
+			}//end for
+
+		Integer[] billed = positive(closed);
+		int[] id = this._customerId._values;
+		Arrays.sort(billed, (a, b) -> total[a] != total[b] ? Long.compare(total[b], total[a]) : Integer.compare(id[b], id[a]));
+		int n = billed.length;
+		String[] fname = new String[n], lname = new String[n];
+		long[] totals = new long[n];
+		for (int j = 0; j < n; ++j){
+			fname[j] = this._names.decode(this._customerFname._values[billed[j]]);
+			lname[j] = this._names.decode(this._customerLname._values[billed[j]]);
+			totals[j] = total[billed[j]];
+		}//end for
+		return ColumnarResult.of(new String[]{ "fname", "lname", "total" },
+			new ColumnarResult.Kind[]{ ColumnarResult.Kind.STRING, ColumnarResult.Kind.STRING, ColumnarResult.Kind.LONG },
+			new Object[]{ fname, lname, totals }, n);
+	}
+
+	/*
+	 * the rows with a positive count
+	 */
+	private static Integer[] positive(long[] counts){
+		List<Integer> rows = new ArrayList<Integer>();
+		for (int i = 0; i < counts.length; ++i)
+			if (counts[i] > 0) rows.add(i);
+		return rows.toArray(new Integer[0]);
+	}
+
+	/*
+	 * runs the task over ranges of the rows on the workers, a small table in
+	 * one range; the partial results come back in row order
+	 */
+	private <T> List<T> parallel(int rows, RangeTask<T> task){
+		int ranges = Math.max(1, Math.min(this._threads, (rows + MIN_RANGE - 1) / MIN_RANGE));
+		List<T> results = new ArrayList<T>(ranges);
+		if (ranges == 1){
+			results.add(task.run(0, rows));
+			return results;
+		}//end if
+		List<Future<T>> futures = new ArrayList<Future<T>>(ranges);
+		for (int r = 0; r < ranges; ++r){
+			int from = (int) ((long) rows * r / ranges);
+			int to = (int) ((long) rows * (r + 1) / ranges);
+			futures.add(this._workers.submit(() -> task.run(from, to)));
+		}//end for
+		try{
+			for (Future<T> future : futures) results.add(future.get());
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running a report");
+		}catch (ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IllegalStateException("Report failed: " + cause, cause);
+		}//end try
+		return results;
+	}
+
+	private static int[] concat(List<Ints> parts){
+		int n = 0;
+		for (Ints part : parts) n += part._size;
+		int[] all = new int[n];
+		n = 0;
+		for (Ints part : parts){
+			System.arraycopy(part._values, 0, all, n, part._size);
+			n += part._size;
+		}//end for
+		return all;
+	}
+
+	/*
+	 * orders the rows by a unique int key, as (key, row) pairs in a long[]
+	 */
+	private static void sortByKey(int[] rows, int[] key){
+		long[] pairs = new long[rows.length];
+		for (int j = 0; j < rows.length; ++j)
+			pairs[j] = ((long) key[rows[j]] << 32) | (rows[j] & 0xFFFFFFFFL);
+		Arrays.parallelSort(pairs);
+		for (int j = 0; j < rows.length; ++j)
+			rows[j] = (int) pairs[j];
+	}
+
+	/*
+	 * The add methods take the values as SQL returns them and are called by
+	 * one thread per table; a row referring to a car that was not loaded is
+	 * dropped, as the joins of the reports would drop it.
+	 */
+
+	private void addCustomer(int id, String fname, String lname){
+		this._customerId.add(id);
+		this._customerFname.add(this._names.encode(blankPadded(fname, 32)));
+		this._customerLname.add(this._names.encode(blankPadded(lname, 32)));
+	}
+
+	private void addCar(String vin, String make, String model, int year){
+		this._carByVin.put(vin, this._carYear._size);
+		this._carMake.add(this._makesAndModels.encode(make));
+		this._carModel.add(this._makesAndModels.encode(model));
+		this._carYear.add(year);
+	}
+
+	private void addOwnership(int customerId, String vin){
+		Integer car = this._carByVin.get(vin);
+		if (car == null) return;
+		this._ownsCustomer.add(customerId);
+		this._ownsCar.add(car);
+	}
+
+	private void addRequest(int rid, int customerId, String vin, int date, int odometer){
+		Integer car = this._carByVin.get(vin);
+		if (car == null) return;
+		this._requestRid.add(rid);
+		this._requestCustomer.add(customerId);
+		this._requestCar.add(car);
+		this._requestDate.add(date);
+		this._requestOdometer.add(odometer);
+	}
+
+	private void addClosed(int wid, int rid, String comment, int bill){
+		this._closedWid.add(wid);
+		this._closedRid.add(rid);
+		this._closedComment.add(this._comments.encode(comment));
+		this._closedBill.add(bill);
+	}
+
+	/*
+	 * trims the columns and builds the hash tables of the joins
+	 */
+	private void seal(){
+		for (Ints column : new Ints[]{ this._customerId, this._customerFname, this._customerLname, this._carMake, this._carModel,
+				this._carYear, this._ownsCustomer, this._ownsCar, this._requestRid, this._requestCustomer, this._requestCar,
+				this._requestDate, this._requestOdometer, this._closedWid, this._closedRid, this._closedComment, this._closedBill })
+			column.trim();
+		this._customerById = new IntIndex(this._customerId._values, this._customerId._size);
+		this._requestByRid = new IntIndex(this._requestRid._values, this._requestRid._size);
+		this._carByVin.clear();
+	}
+
+	/*
+	 * a CHAR(n) value: trailing blanks removed, then padded to n
+	 */
+	private static String blankPadded(String value, int n){
+		if (value == null) return null;
+		int end = value.length();
+		while (end > 0 && value.charAt(end - 1) == ' ') --end;
+		if (end > n) throw new IllegalArgumentException("value too long for type character(" + n + "): " + value);
+		StringBuilder padded = new StringBuilder(n).append(value, 0, end);
+		while (padded.length() < n) padded.append(' ');
+		return padded.toString();
+	}
+
+	private interface LineHandler{
+		void handle(String[] fields);
+	}
+
+	private Void readCsv(File file, int fields, LineHandler handler) throws IOException {
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)){
+			String line;
+			int lineNo = 0;
+			while ((line = in.readLine()) != null){
+				++lineNo;
+				try{
+					handler.handle(splitCopyText(line, fields));
+				}catch (RuntimeException e){
+					throw new IOException(file + ":" + lineNo + ": " + e.getMessage(), e);
+				}//end try
+			}//end while
+		}
+		return null;
+	}
+
+	/**
+	 * Method to split a line of the COPY text format with ',' as the
+	 * delimiter: a backslash escapes the next character (\n, \t and the
+	 * other C escapes, octal and \x hex are decoded) and a field of only \N
+	 * is null.
+	 *
+	 * @param line the line without its line break
+	 * @param fields the number of fields expected
+	 * @return the fields
+	 * @throws IllegalArgumentException when the number of fields is wrong
+	 */
+	static String[] splitCopyText(String line, int fields){
+		String[] f = new String[fields];
+		StringBuilder field = new StringBuilder();
+		int count = 0;
+		for (int i = 0; i <= line.length(); ++i){
+			if (i == line.length() || line.charAt(i) == ','){
+				if (count == fields) throw new IllegalArgumentException("extra data after the last expected column");
+				f[count++] = field.length() == 2 && field.charAt(0) == '\\' && field.charAt(1) == 'N' ? null : unescape(field);
+				field.setLength(0);
+				continue;
+			}//end if
+			char c = line.charAt(i);
+			field.append(c);
+			if (c == '\\' && i + 1 < line.length()){
+				// the escaped character, a comma included, stays in the field
+				field.append(line.charAt(++i));
+			}//end if
+		}//end for
+		if (count != fields) throw new IllegalArgumentException("expected " + fields + " columns, got " + count);
+		return f;
+	}
+
+	private static String unescape(StringBuilder field){
+		if (field.indexOf("\\") < 0) return field.toString();
+		StringBuilder out = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); ++i){
+			char c = field.charAt(i);
+			if (c != '\\' || i + 1 == field.length()){
+				out.append(c);
+				continue;
+			}//end if
+			c = field.charAt(++i);
+			switch (c){
+				case 'b': out.append('\b'); break;
+				case 'f': out.append('\f'); break;
+				case 'n': out.append('\n'); break;
+				case 'r': out.append('\r'); break;
+				case 't': out.append('\t'); break;
+				case 'v': out.append('\u000B'); break;
+				case 'x':
+					int hex = 0, hexDigits = 0;
+					while (hexDigits < 2 && i + 1 < field.length() && Character.digit(field.charAt(i + 1), 16) >= 0){
+						hex = hex * 16 + Character.digit(field.charAt(++i), 16);
+						++hexDigits;
+					}//end while
+					if (hexDigits == 0) out.append('x');
+					else out.append((char) hex);
+					break;
+				default:
+					if (c >= '0' && c <= '7'){
+						int octal = c - '0';
+						for (int digits = 1; digits < 3 && i + 1 < field.length() && field.charAt(i + 1) >= '0' && field.charAt(i + 1) <= '7'; ++digits)
+							octal = octal * 8 + (field.charAt(++i) - '0');
+						out.append((char) octal);
+					}else{
+						out.append(c);
+					}//end if
+			}
+		}//end for
+		return out.toString();
+	}
+
+	private void await(List<Future<Void>> loads) throws IOException {
+		try{
+			for (Future<Void> load : loads) load.get();
+			loads.clear();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading");
+		}catch (ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new IOException("Load failed: " + cause, cause);
+		}//end try
+	}
+}
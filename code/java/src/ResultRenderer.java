@@ -0,0 +1,234 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * This class writes a result set to a character stream one row at a time.
+ * The column metadata is read once per result, cells are appended to a
+ * reused line buffer and every line goes to a single (buffered) writer, so
+ * memory use does not depend on the number of rows.
+ *
+ */
+
+public class ResultRenderer{
+
+	/**
+	 * Output formats.  TSV is the original console format: every cell
+	 * followed by a tab.
+	 */
+	public enum Format{
+		TABLE, TSV, CSV;
+
+		public static Format parse(String name){
+			return Format.valueOf(name.trim().toUpperCase());
+		}
+	}
+
+	//widest column the aligned table pads to, longer values overflow
+	private static final int MAX_TABLE_WIDTH = 40;
+
+	private final Format _format;
+	private final Writer _out;
+	private final StringBuilder _line = new StringBuilder(512);
+	//copy of _line handed to the writer, avoids a String per line
+	private char[] _chars = new char[512];
+	//characters of every value rendered, the text size of the result
+	private long _valueChars = 0;
+
+	public ResultRenderer(Format format, Writer out){
+		this._format = format;
+		this._out = out;
+	}
+
+	public Format getFormat(){
+		return this._format;
+	}
+
+	public Writer getWriter(){
+		return this._out;
+	}
+
+	public long getValueChars(){
+		return this._valueChars;
+	}
+
+	/**
+	 * Method to write every row of the result set, preceded by a header
+	 * line when the result is not empty, and flush the writer.
+	 *
+	 * @param rs the result set positioned before the first row
+	 * @return the number of rows written
+	 * @throws java.sql.SQLException when reading the result failed
+	 * @throws java.io.IOException when writing the output failed
+	 */
+	public int render(ResultSet rs) throws SQLException, IOException {
+		return render(rs, null);
+	}
+
+	/**
+	 * Method to write the rows of the result set that the guard admits,
+	 * preceded by a header line when the result is not empty, and flush
+	 * the writer, also when reading fails midway, so the rows written before
+	 * a cancel or timeout are shown.  Reading stops at the first row the
+	 * guard refuses.
+	 *
+	 * @param rs the result set positioned before the first row
+	 * @param guard the row and size limits, null for none
+	 * @return the number of rows written
+	 * @throws java.sql.SQLException when reading the result failed
+	 * @throws java.io.IOException when writing the output failed
+	 */
+	public int render(ResultSet rs, QueryGuard guard) throws SQLException, IOException {
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int numCol = rsmd.getColumnCount();
+		String[] names = new String[numCol];
+		int[] widths = new int[numCol];
+		for (int i = 0; i < numCol; ++i){
+			names[i] = rsmd.getColumnName(i + 1);
+			widths[i] = Math.min(MAX_TABLE_WIDTH, Math.max(names[i].length(), rsmd.getColumnDisplaySize(i + 1)));
+		}//end for
+
+		int rowCount = 0;
+		long chars = this._valueChars;
+		try{
+			while (rs.next()){
+				if (guard != null && !guard.admit(rowCount, this._valueChars - chars)) break;
+				if (rowCount == 0) writeHeader(names, widths);
+				this._line.setLength(0);
+				for (int i = 0; i < numCol; ++i){
+					String value = rs.getString(i + 1);
+					if (value != null) this._valueChars += value.length();
+					appendCell(value, i, widths[i]);
+				}//end for
+				endLine();
+				++rowCount;
+			}//end while
+		}finally{
+			this._out.flush();
+		}//end try
+		return rowCount;
+	}//end render
+
+	/**
+	 * Method to write the first columns of a result read earlier, preceded
+	 * by a header line when the result is not empty, and flush the writer.
+	 * Table widths follow the longest value of each column.
+	 *
+	 * @param result the rows to write
+	 * @param columns how many leading columns to write
+	 * @return the number of rows written
+	 * @throws java.io.IOException when writing the output failed
+	 */
+	public int render(ColumnarResult result, int columns) throws IOException {
+		String[] names = new String[columns];
+		int[] widths = new int[columns];
+		for (int i = 0; i < columns; ++i){
+			names[i] = result.getColumnName(i + 1);
+			widths[i] = names[i].length();
+			for (int row = 0; row < result.getRowCount() && widths[i] < MAX_TABLE_WIDTH; ++row){
+				String value = result.getString(row, i + 1);
+				widths[i] = Math.max(widths[i], value == null ? 4 : value.length());
+			}//end for
+			widths[i] = Math.min(MAX_TABLE_WIDTH, widths[i]);
+		}//end for
+
+		for (int row = 0; row < result.getRowCount(); ++row){
+			if (row == 0) writeHeader(names, widths);
+			this._line.setLength(0);
+			for (int i = 0; i < columns; ++i){
+				String value = result.getString(row, i + 1);
+				if (value != null) this._valueChars += value.length();
+				appendCell(value, i, widths[i]);
+			}//end for
+			endLine();
+		}//end for
+		this._out.flush();
+		return result.getRowCount();
+	}//end render
+
+	private void writeHeader(String[] names, int[] widths) throws IOException {
+		this._line.setLength(0);
+		for (int i = 0; i < names.length; ++i)
+			appendCell(names[i], i, widths[i]);
+		endLine();
+		if (this._format == Format.TABLE){
+			this._line.setLength(0);
+			for (int i = 0; i < widths.length; ++i){
+				if (i > 0) this._line.append("-+-");
+				for (int j = 0; j < widths[i]; ++j) this._line.append('-');
+			}//end for
+			endLine();
+		}//end if
+	}
+
+	private void appendCell(String value, int column, int width){
+		switch (this._format){
+			case TSV:
+				this._line.append(value).append('\t');
+				break;
+			case CSV:
+				if (column > 0) this._line.append(',');
+				appendCsv(value);
+				break;
+			case TABLE:
+				if (column > 0) this._line.append(" | ");
+				String text = value == null ? "null" : value;
+				this._line.append(text);
+				for (int j = text.length(); j < width; ++j) this._line.append(' ');
+				break;
+		}
+	}
+
+	/*
+	 * RFC 4180 quoting: fields with a comma, quote or line break are quoted
+	 * and embedded quotes doubled, null is the empty field.
+	 */
+	private void appendCsv(String value){
+		if (value == null) return;
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; ++i){
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}//end for
+		if (!quote){
+			this._line.append(value);
+			return;
+		}//end if
+		this._line.append('"');
+		for (int i = 0; i < value.length(); ++i){
+			char c = value.charAt(i);
+			if (c == '"') this._line.append('"');
+			this._line.append(c);
+		}//end for
+		this._line.append('"');
+	}
+
+	private void endLine() throws IOException {
+		if (this._format == Format.TABLE){
+			// trailing padding of the last column is noise
+			int end = this._line.length();
+			while (end > 0 && this._line.charAt(end - 1) == ' ') --end;
+			this._line.setLength(end);
+		}//end if
+		this._line.append('\n');
+		int len = this._line.length();
+		if (this._chars.length < len) this._chars = new char[Math.max(len, this._chars.length * 2)];
+		this._line.getChars(0, len, this._chars, 0);
+		this._out.write(this._chars, 0, len);
+	}
+}
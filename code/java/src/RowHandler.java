@@ -0,0 +1,27 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Callback invoked once per row by MechanicShop.executeQueryForEach.  The
+ * result set is positioned on the current row; read it with the typed
+ * getters (getInt, getLong, getDate, ...) and do not keep a reference to it
+ * or advance it.
+ *
+ */
+
+public interface RowHandler{
+	void handle(ResultSet row) throws SQLException;
+}
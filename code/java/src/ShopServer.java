@@ -0,0 +1,314 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class serves the menu operations to many clients at once over a line
+ * protocol on a local TCP port.  Every client gets its own thread and all of
+ * them share the connection pool of one MechanicShop.
+ *
+ * A request is one line.  Operations 1-5 use the batch line format (see
+ * BatchRunner); the reports are their option number or title, with k after a
+ * comma for option 9.  The lookups of InsertServiceRequest and a status
+ * command are also available:
+ *
+ * <pre>
+ * 1,&lt;id&gt;,&lt;fname&gt;,&lt;lname&gt;,&lt;phone&gt;,&lt;address&gt;      ... 5,&lt;rid&gt;,&lt;mid&gt;,&lt;date&gt;,&lt;bill&gt;,&lt;comment&gt;
+ * 6 | 7 | 8 | 9,&lt;k&gt; | 10                          reports, as CSV
+ * customers,&lt;lname&gt;                              customers with that last name
+ * search,&lt;text&gt;                                 customers by part of name or phone
+ * cars,&lt;customer id&gt;                             numbered cars of the customer
+ * stats                                          pool, cache and query metrics
+ * quit                                           closes the connection
+ * </pre>
+ *
+ * The reply is zero or more data lines starting with "= ", then one status
+ * line: "OK &lt;data lines&gt;" or "ERR &lt;message&gt;".  A request that cannot be
+ * admitted in time gets "ERR busy"; a request that runs past its timeout
+ * has its statement cancelled and gets "ERR" with the driver's message.
+ *
+ */
+
+public class ShopServer{
+	private final MechanicShop _esql;
+	private final int _port;
+	//clients served at once, one thread each
+	private final ThreadPoolExecutor _clients;
+	//requests running at once; the rest wait up to _admissionTimeoutMillis
+	private final Semaphore _admission;
+	private final long _admissionTimeoutMillis;
+	private final long _requestTimeoutMillis;
+	private volatile ServerSocket _socket = null;
+
+	//statistics
+	private final AtomicLong _accepted = new AtomicLong();
+	private final AtomicLong _refused = new AtomicLong();
+	private final AtomicLong _requests = new AtomicLong();
+	private final AtomicLong _busy = new AtomicLong();
+	private final AtomicLong _failed = new AtomicLong();
+
+	public ShopServer(MechanicShop esql, int port, int maxClients, int maxInFlight, long admissionTimeoutMillis, long requestTimeoutMillis){
+		this._esql = esql;
+		this._port = port;
+		this._clients = new ThreadPoolExecutor(0, Math.max(1, maxClients), 60, TimeUnit.SECONDS,
+			new SynchronousQueue<Runnable>(), r -> {
+				Thread t = new Thread(r, "shop-client");
+				t.setDaemon(true);
+				return t;
+			});
+		this._admission = new Semaphore(Math.max(1, maxInFlight), true);
+		this._admissionTimeoutMillis = admissionTimeoutMillis;
+		this._requestTimeoutMillis = requestTimeoutMillis;
+	}
+
+	/**
+	 * Method to accept clients on the loopback interface until close is
+	 * called (or the JVM shuts down).
+	 *
+	 * @throws java.io.IOException when the port could not be opened
+	 */
+	public void run() throws IOException {
+		this._socket = new ServerSocket(this._port, 128, InetAddress.getLoopbackAddress());
+		System.out.println("Serving on " + this._socket.getLocalSocketAddress() + " for up to "
+			+ this._clients.getMaximumPoolSize() + " clients, " + this._admission.availablePermits() + " requests at once");
+		Thread hook = new Thread(this::close);
+		Runtime.getRuntime().addShutdownHook(hook);
+		try{
+			while (!this._socket.isClosed()){
+				Socket client;
+				try{
+					client = this._socket.accept();
+				}catch (SocketException e){
+					break; // closed
+				}//end try
+				try{
+					this._clients.execute(() -> serve(client));
+					this._accepted.incrementAndGet();
+				}catch (RejectedExecutionException e){
+					this._refused.incrementAndGet();
+					refuse(client);
+				}//end try
+			}//end while
+		}finally{
+			this._clients.shutdownNow();
+			try{
+				Runtime.getRuntime().removeShutdownHook(hook);
+			}catch (IllegalStateException e){
+				// already shutting down
+			}//end try
+		}
+	}//end run
+
+	public void close(){
+		try{
+			ServerSocket socket = this._socket;
+			if (socket != null) socket.close();
+		}catch (IOException e){
+			// ignored.
+		}//end try
+	}
+
+	public String getStats(){
+		return String.format("clients accepted / refused / connected : %d / %d / %d%n"
+			+ "requests / busy / failed              : %d / %d / %d",
+			this._accepted.get(), this._refused.get(), this._clients.getActiveCount(),
+			this._requests.get(), this._busy.get(), this._failed.get());
+	}
+
+	private static void refuse(Socket client){
+		try (Socket c = client){
+			Writer out = new OutputStreamWriter(c.getOutputStream(), StandardCharsets.UTF_8);
+			out.write("ERR server full\n");
+			out.flush();
+		}catch (IOException e){
+			// ignored.
+		}//end try
+	}
+
+	/*
+	 * runs the requests of one client until it quits or disconnects
+	 */
+	private void serve(Socket client){
+		try (Socket c = client;
+				BufferedReader in = new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(c.getOutputStream(), StandardCharsets.UTF_8), 1 << 14)){
+			c.setTcpNoDelay(true);
+			DataWriter data = new DataWriter(out);
+			String line;
+			while ((line = in.readLine()) != null){
+				line = line.trim();
+				if (line.isEmpty()) continue;
+				if (line.equalsIgnoreCase("quit")) break;
+				this._requests.incrementAndGet();
+				data.reset();
+				String status = admit(line, data);
+				out.write(status);
+				out.write('\n');
+				out.flush();
+			}//end while
+		}catch (IOException e){
+			// the client went away
+		}//end try
+	}
+
+	/*
+	 * runs one request once a slot is free, within the request timeout
+	 */
+	private String admit(String line, DataWriter data) throws IOException {
+		try{
+			if (!this._admission.tryAcquire(this._admissionTimeoutMillis, TimeUnit.MILLISECONDS)){
+				this._busy.incrementAndGet();
+				return "ERR busy";
+			}//end if
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return "ERR server shutting down";
+		}//end try
+		this._esql.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this._requestTimeoutMillis));
+		try{
+			handle(line, data);
+			return "OK " + data._lines;
+		}catch (SQLException | RuntimeException e){
+			this._failed.incrementAndGet();
+			String message = e.getMessage() == null ? e.toString() : e.getMessage();
+			return "ERR " + message.replace('\n', ' ').replace('\r', ' ');
+		}finally{
+			this._esql.clearDeadline();
+			this._admission.release();
+		}
+	}//end admit
+
+	private void handle(String line, DataWriter data) throws SQLException, IOException {
+		int comma = line.indexOf(',');
+		String head = (comma < 0 ? line : line.substring(0, comma)).trim();
+		String rest = comma < 0 ? null : line.substring(comma + 1).trim();
+		ResultRenderer csv = new ResultRenderer(ResultRenderer.Format.CSV, data);
+
+		switch (head.toLowerCase()){
+			case "customers":
+				ColumnarResult customers = this._esql.findCustomersByLastName(required(rest, "customers needs a last name"));
+				csv.render(customers, customers.getColumnCount());
+				return;
+			case "search":
+				ColumnarResult found = this._esql.searchCustomers(required(rest, "search needs part of a name or phone number"),
+					Integer.getInteger("mechanicshop.search.limit", 20));
+				csv.render(found, found.getColumnCount());
+				return;
+			case "cars":
+				ColumnarResult cars = this._esql.findCarsOfCustomer(Integer.parseInt(required(rest, "cars needs a customer id")));
+				csv.render(cars, cars.getColumnCount());
+				return;
+			case "stats":
+				data.write(getStats() + "\n" + this._esql.getPoolStats() + "\n" + this._esql.getCacheStats() + "\n" + this._esql.getQueryMetrics() + "\n");
+				return;
+		}
+
+		int op;
+		try{
+			op = BatchRunner.opOf(head);
+		}catch (IllegalArgumentException e){
+			Report report = Report.parse(head);
+			if (report.getParameterCount() > 0)
+				this._esql.runReport(report, csv, Integer.parseInt(required(rest, report.title + " needs k")));
+			else
+				this._esql.runReport(report, csv);
+			return;
+		}//end try
+
+		String[] f = BatchRunner.splitFields(op, rest);
+		switch (op){
+			case 1:
+				MechanicShop.addCustomer(this._esql, Integer.parseInt(f[0]), f[1], f[2], f[3], f[4]);
+				break;
+			case 2:
+				MechanicShop.addMechanic(this._esql, Integer.parseInt(f[0]), f[1], f[2], Integer.parseInt(f[3]));
+				break;
+			case 3:
+				MechanicShop.addCar(this._esql, f[0], f[1], f[2], Integer.parseInt(f[3]));
+				break;
+			case 4:
+				data.write(MechanicShop.openServiceRequest(this._esql, Integer.parseInt(f[0]), f[1], Integer.parseInt(f[2]), f[3]) + "\n");
+				break;
+			default:
+				data.write(MechanicShop.closeServiceRequest(this._esql, Integer.parseInt(f[0]), Integer.parseInt(f[1]),
+					java.sql.Date.valueOf(BulkLoader.normalizeDate(f[2])), f[4], Integer.parseInt(f[3])) + "\n");
+				break;
+		}
+	}//end handle
+
+	private static String required(String field, String message){
+		if (field == null || field.isEmpty()) throw new IllegalArgumentException(message);
+		return field;
+	}
+
+	/*
+	 * prefixes every line written with "= " and counts the lines
+	 */
+	private static class DataWriter extends Writer{
+		private final Writer _out;
+		private boolean _lineStart = true;
+		private int _lines = 0;
+
+		DataWriter(Writer out){
+			this._out = out;
+		}
+
+		void reset(){
+			this._lineStart = true;
+			this._lines = 0;
+		}
+
+		public void write(char[] buf, int off, int len) throws IOException {
+			int start = off;
+			int end = off + len;
+			for (int i = off; i < end; ++i){
+				if (this._lineStart){
+					this._out.write(buf, start, i - start);
+					this._out.write("= ");
+					start = i;
+					this._lineStart = false;
+				}//end if
+				if (buf[i] == '\n'){
+					++this._lines;
+					this._lineStart = true;
+				}//end if
+			}//end for
+			this._out.write(buf, start, end - start);
+		}
+
+		// the status line follows, so the reply is flushed once, after it
+		public void flush(){
+		}
+
+		public void close(){
+		}
+	}//end DataWriter
+}
@@ -0,0 +1,104 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the prepared statements of one physical connection in a
+ * least-recently-used cache keyed by the SQL text. Since every parameterized
+ * query uses '?' placeholders, the SQL text is the shape of the query and the
+ * same statement (and its server-side plan) is reused for every execution.
+ *
+ */
+
+public class StatementCache{
+	//connection owning every cached statement
+	private final Connection _connection;
+	//maximum number of statements kept open
+	private final int _capacity;
+	//access ordered map, the eldest entry is the least recently used one
+	private final LinkedHashMap<String, PreparedStatement> _statements;
+	private long _hits = 0;
+	private long _misses = 0;
+
+	public StatementCache(Connection connection, int capacity){
+		this._connection = connection;
+		this._capacity = Math.max(1, capacity);
+		this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest){
+				if (size() <= _capacity) return false;
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Method to fetch the prepared statement for the given SQL, preparing it
+	 * on the connection the first time the SQL is seen. The returned statement
+	 * is owned by the cache and must not be closed by the caller.
+	 *
+	 * @param sql the SQL text with '?' parameter placeholders
+	 * @return a prepared statement with its parameters cleared
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement stmt = this._statements.get(sql);
+		if (stmt != null && !stmt.isClosed()){
+			++this._hits;
+			stmt.clearParameters();
+			return stmt;
+		}//end if
+		++this._misses;
+		stmt = this._connection.prepareStatement(sql);
+		this._statements.put(sql, stmt);
+		return stmt;
+	}//end prepare
+
+	public int size(){
+		return this._statements.size();
+	}
+
+	public long getHits(){
+		return this._hits;
+	}
+
+	public long getMisses(){
+		return this._misses;
+	}
+
+	/**
+	 * Method to close every cached statement. The connection itself is left
+	 * open.
+	 */
+	public void close(){
+		Iterator<PreparedStatement> it = this._statements.values().iterator();
+		while (it.hasNext()){
+			closeQuietly(it.next());
+			it.remove();
+		}//end while
+	}//end close
+
+	private static void closeQuietly(PreparedStatement stmt){
+		try{
+			stmt.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}
+}
@@ -4,6 +4,10 @@ DROP TABLE IF EXISTS Car CASCADE;--OK
 DROP TABLE IF EXISTS Owns CASCADE;--OK
 DROP TABLE IF EXISTS Service_Request CASCADE;--OK
 DROP TABLE IF EXISTS Closed_Request CASCADE;--OK
+DROP TABLE IF EXISTS Customer_Bill_Total CASCADE;--OK
+DROP TABLE IF EXISTS Car_Service_Count CASCADE;--OK
+DROP TABLE IF EXISTS Closed_Request_Archive CASCADE;--OK
+DROP TABLE IF EXISTS Service_Request_Archive CASCADE;--OK
 
 
 -------------
@@ -148,3 +152,333 @@ COPY Closed_Request (
 )
 FROM 'closed_request.csv'
 WITH DELIMITER ',';
+
+--------------------
+-- LOOKUP INDEXES --
+--------------------
+-- Service request intake finds customers by last name and checks that the
+-- customer owns the car; built after the load so COPY does not maintain them.
+
+CREATE INDEX Customer_lname_idx ON Customer (lname);
+CREATE INDEX Owns_customer_car_idx ON Owns (customer_id, car_vin);
+-- A service request is closed at most once; closing relies on this index
+-- (ON CONFLICT) to refuse a second close in the same statement.
+CREATE UNIQUE INDEX Closed_Request_rid_idx ON Closed_Request (rid);
+
+-----------------------------
+-- JOIN AND REPORT INDEXES --
+-----------------------------
+-- Foreign keys of the service history, so joins from a customer or car and
+-- the checks of deletes from Customer and Car do not scan the history.
+-- Owns.customer_id is the leading column of Owns_customer_car_idx above.
+
+CREATE INDEX Service_Request_customer_id_idx ON Service_Request (customer_id);
+CREATE INDEX Service_Request_car_vin_idx ON Service_Request (car_vin);
+
+-- Reports 6 and 8 filter on a fixed predicate and are paged by wid and rid;
+-- a partial index on the page key holds just their rows, in page order.
+CREATE INDEX Closed_Request_bill_under_100_idx ON Closed_Request (wid) WHERE bill < 100;
+CREATE INDEX Service_Request_under_50000_idx ON Service_Request (rid) WHERE odometer < 50000;
+
+-- The history is appended in roughly date order. It is not partitioned by
+-- date: a partitioned table needs date in every unique key, so rid could no
+-- longer be unique on its own, and the foreign key from Closed_Request and
+-- the ON CONFLICT (rid) of intake and closing depend on that.  BRIN indexes
+-- give date range scans over years of history for a few pages each.
+CREATE INDEX Service_Request_date_brin ON Service_Request USING BRIN (date);
+CREATE INDEX Closed_Request_date_brin ON Closed_Request USING BRIN (date);
+
+--------------------
+-- SEARCH INDEXES --
+--------------------
+-- Customer search (MechanicShop.searchCustomers) matches part of a name or
+-- phone number, in any case and with typos.  Trigram indexes on the
+-- lowercased full name and on the digits of the phone serve both LIKE
+-- '%...%' and the word similarity operator <%.  pg_trgm is a trusted
+-- extension, so the owner of the database can create it.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX Customer_name_trgm_idx ON Customer USING GIN ((lower(rtrim(fname) || ' ' || rtrim(lname))) gin_trgm_ops);
+CREATE INDEX Customer_phone_trgm_idx ON Customer USING GIN ((regexp_replace(phone, '[^0-9]', '', 'g')) gin_trgm_ops);
+
+------------------
+-- ID SEQUENCES --
+------------------
+-- New keys are reserved by the application in blocks of INCREMENT BY ids
+-- (see IdGenerator.java). Each sequence starts after the loaded data.
+
+CREATE SEQUENCE Service_Request_rid_seq INCREMENT BY 50 OWNED BY Service_Request.rid;
+SELECT setval('Service_Request_rid_seq', (SELECT COALESCE(MAX(rid), 0) + 1 FROM Service_Request), false);
+
+CREATE SEQUENCE Owns_ownership_id_seq INCREMENT BY 50 OWNED BY Owns.ownership_id;
+SELECT setval('Owns_ownership_id_seq', (SELECT COALESCE(MAX(ownership_id), 0) + 1 FROM Owns), false);
+
+CREATE SEQUENCE Closed_Request_wid_seq INCREMENT BY 50 OWNED BY Closed_Request.wid;
+SELECT setval('Closed_Request_wid_seq', (SELECT COALESCE(MAX(wid), 0) + 1 FROM Closed_Request), false);
+
+---------------------
+-- HISTORY ARCHIVE --
+---------------------
+-- Closed requests older than a cutoff are moved, with their service
+-- request, out of the hot tables into append-only archive tables (see
+-- HistoryArchiver.java), so intake and closing work on small tables and
+-- indexes.  The archive is written in customer and car order, so the
+-- history of one customer or car is on few pages.  Reports read the
+-- *_History views, which append the archive to the hot table; rids are
+-- unique across both since they come from one sequence.
+
+CREATE TABLE Service_Request_Archive
+(
+	rid INTEGER NOT NULL,
+	customer_id INTEGER NOT NULL,
+	car_vin VARCHAR(16) NOT NULL,
+	date DATE NOT NULL,
+	odometer _PINTEGER NOT NULL,
+	complain TEXT,
+	PRIMARY KEY (rid),
+	FOREIGN KEY (customer_id) REFERENCES Customer(id),
+	FOREIGN KEY (car_vin) REFERENCES Car(vin)
+);
+
+CREATE TABLE Closed_Request_Archive
+(
+	wid INTEGER NOT NULL,
+	rid INTEGER NOT NULL,
+	mid INTEGER NOT NULL,
+	date DATE NOT NULL,
+	comment TEXT,
+	bill _PINTEGER NOT NULL,
+	PRIMARY KEY (wid),
+	FOREIGN KEY (rid) REFERENCES Service_Request_Archive(rid),
+	FOREIGN KEY (mid) REFERENCES Mechanic(id)
+);
+
+-- the same lookup and report indexes as the hot tables
+CREATE UNIQUE INDEX Closed_Request_Archive_rid_idx ON Closed_Request_Archive (rid);
+CREATE INDEX Service_Request_Archive_customer_id_idx ON Service_Request_Archive (customer_id);
+CREATE INDEX Service_Request_Archive_car_vin_idx ON Service_Request_Archive (car_vin);
+CREATE INDEX Closed_Request_Archive_bill_under_100_idx ON Closed_Request_Archive (wid) WHERE bill < 100;
+CREATE INDEX Service_Request_Archive_under_50000_idx ON Service_Request_Archive (rid) WHERE odometer < 50000;
+
+CREATE VIEW Service_Request_History AS
+SELECT rid, customer_id, car_vin, date, odometer, complain FROM Service_Request
+UNION ALL
+SELECT rid, customer_id, car_vin, date, odometer, complain FROM Service_Request_Archive;
+
+CREATE VIEW Closed_Request_History AS
+SELECT wid, rid, mid, date, comment, bill FROM Closed_Request
+UNION ALL
+SELECT wid, rid, mid, date, comment, bill FROM Closed_Request_Archive;
+
+CREATE FUNCTION refuse_archive_change() RETURNS trigger AS $$
+BEGIN
+	RAISE EXCEPTION '% is append-only', TG_TABLE_NAME;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER Service_Request_Archive_append_only BEFORE UPDATE OR DELETE ON Service_Request_Archive
+FOR EACH STATEMENT EXECUTE PROCEDURE refuse_archive_change();
+CREATE TRIGGER Closed_Request_Archive_append_only BEFORE UPDATE OR DELETE ON Closed_Request_Archive
+FOR EACH STATEMENT EXECUTE PROCEDURE refuse_archive_change();
+
+-- moves up to batch of the oldest requests closed before cutoff, in one
+-- transaction, and returns how many were moved; the summaries below count
+-- the archive too, so their triggers leave them as they are
+CREATE FUNCTION archive_closed_history(cutoff DATE, batch INTEGER) RETURNS INTEGER AS $$
+DECLARE
+	moved INTEGER;
+BEGIN
+	PERFORM set_config('mechanicshop.archiving', 'on', true);
+	WITH picked AS (
+		SELECT wid, rid FROM Closed_Request WHERE date < cutoff ORDER BY date, wid LIMIT batch
+	), closed AS (
+		DELETE FROM Closed_Request AS CR USING picked AS P WHERE CR.wid = P.wid RETURNING CR.*
+	), opened AS (
+		DELETE FROM Service_Request AS SR USING picked AS P WHERE SR.rid = P.rid RETURNING SR.*
+	), archived AS (
+		INSERT INTO Service_Request_Archive SELECT * FROM opened ORDER BY customer_id, car_vin, rid
+	)
+	INSERT INTO Closed_Request_Archive SELECT C.* FROM closed AS C ORDER BY C.rid;
+	GET DIAGNOSTICS moved = ROW_COUNT;
+	PERFORM set_config('mechanicshop.archiving', 'off', true);
+	RETURN moved;
+END;
+$$ LANGUAGE plpgsql;
+
+-------------------------
+-- REPORT AGGREGATES --
+-------------------------
+-- Per-customer bill totals (report 10) and per-car service counts
+-- (report 9), kept up to date by triggers on every write so the reports
+-- read the summary instead of grouping the whole history.  A row whose
+-- count drops to zero is deleted, so it does not keep its car or customer
+-- from being deleted.
+
+CREATE TABLE Customer_Bill_Total
+(
+	customer_id INTEGER NOT NULL,
+	total BIGINT NOT NULL,
+	closed INTEGER NOT NULL,
+	PRIMARY KEY (customer_id),
+	FOREIGN KEY (customer_id) REFERENCES Customer(id)
+);
+-- customer_id breaks ties so report 10 can be paged by (total, customer_id)
+CREATE INDEX Customer_Bill_Total_total_idx ON Customer_Bill_Total (total DESC, customer_id DESC);
+
+CREATE TABLE Car_Service_Count
+(
+	car_vin VARCHAR(16) NOT NULL,
+	services BIGINT NOT NULL,
+	PRIMARY KEY (car_vin),
+	FOREIGN KEY (car_vin) REFERENCES Car(vin)
+);
+CREATE INDEX Car_Service_Count_services_idx ON Car_Service_Count (services DESC);
+
+CREATE FUNCTION maintain_car_service_count() RETURNS trigger AS $$
+BEGIN
+	-- archiving moves history without changing it
+	IF current_setting('mechanicshop.archiving', true) = 'on' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		UPDATE Car_Service_Count SET services = services - 1 WHERE car_vin = OLD.car_vin;
+		DELETE FROM Car_Service_Count WHERE car_vin = OLD.car_vin AND services <= 0;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		INSERT INTO Car_Service_Count AS S (car_vin, services) VALUES (NEW.car_vin, 1)
+		ON CONFLICT (car_vin) DO UPDATE SET services = S.services + 1;
+	END IF;
+	-- moves the bills already closed on the request to its new customer
+	IF TG_OP = 'UPDATE' AND NEW.customer_id <> OLD.customer_id THEN
+		UPDATE Customer_Bill_Total AS B SET total = B.total - T.total, closed = B.closed - T.closed
+		FROM (SELECT SUM(bill) AS total, COUNT(*) AS closed FROM Closed_Request WHERE rid = OLD.rid) AS T
+		WHERE B.customer_id = OLD.customer_id AND T.closed > 0;
+		DELETE FROM Customer_Bill_Total WHERE customer_id = OLD.customer_id AND closed <= 0;
+		INSERT INTO Customer_Bill_Total AS B (customer_id, total, closed)
+		SELECT NEW.customer_id, SUM(bill), COUNT(*) FROM Closed_Request WHERE rid = NEW.rid HAVING COUNT(*) > 0
+		ON CONFLICT (customer_id) DO UPDATE SET total = B.total + EXCLUDED.total, closed = B.closed + EXCLUDED.closed;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION maintain_customer_bill_total() RETURNS trigger AS $$
+BEGIN
+	IF current_setting('mechanicshop.archiving', true) = 'on' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		UPDATE Customer_Bill_Total AS B SET total = B.total - OLD.bill, closed = B.closed - 1
+		FROM Service_Request AS SR WHERE SR.rid = OLD.rid AND B.customer_id = SR.customer_id;
+		DELETE FROM Customer_Bill_Total AS B USING Service_Request AS SR
+		WHERE SR.rid = OLD.rid AND B.customer_id = SR.customer_id AND B.closed <= 0;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		INSERT INTO Customer_Bill_Total AS B (customer_id, total, closed)
+		SELECT customer_id, NEW.bill, 1 FROM Service_Request WHERE rid = NEW.rid
+		ON CONFLICT (customer_id) DO UPDATE SET total = B.total + EXCLUDED.total, closed = B.closed + 1;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER Service_Request_aggregates AFTER INSERT OR DELETE OR UPDATE OF car_vin, customer_id ON Service_Request
+FOR EACH ROW EXECUTE PROCEDURE maintain_car_service_count();
+
+CREATE TRIGGER Closed_Request_aggregates AFTER INSERT OR DELETE OR UPDATE OF rid, bill ON Closed_Request
+FOR EACH ROW EXECUTE PROCEDURE maintain_customer_bill_total();
+
+-- recomputes both summaries from the history, archive included, used after
+-- bulk loads
+CREATE FUNCTION rebuild_report_aggregates() RETURNS void AS $$
+	DELETE FROM Customer_Bill_Total;
+	DELETE FROM Car_Service_Count;
+	INSERT INTO Car_Service_Count (car_vin, services)
+	SELECT car_vin, COUNT(*) FROM Service_Request_History GROUP BY car_vin;
+	INSERT INTO Customer_Bill_Total (customer_id, total, closed)
+	SELECT SR.customer_id, SUM(CR.bill), COUNT(*) FROM Closed_Request_History AS CR, Service_Request_History AS SR WHERE CR.rid = SR.rid GROUP BY SR.customer_id;
+$$ LANGUAGE sql;
+
+SELECT rebuild_report_aggregates();
+
+-------------------
+-- CHANGE EVENTS --
+-------------------
+-- Every statement that writes one of the tables below publishes an event on
+-- the mechanicshop_changes channel (see ChangeListener.java), so instances
+-- can keep caches of these rows.  The payload is "<table> <op>", op being
+-- I, U, D or T, then the distinct keys of the changed rows, one per line;
+-- TG_ARGV[0] is the key expression of the table.  A statement that changed
+-- more than 200 rows sends no keys, which stands for the whole table and
+-- keeps the payload under the 8000 byte limit of NOTIFY.  BulkLoader turns
+-- the *_insert_events triggers off while it loads and then sends one whole
+-- table event per table.
+
+CREATE FUNCTION notify_changes() RETURNS trigger AS $$
+DECLARE
+	source TEXT;
+	keys TEXT[];
+	changed BIGINT := 0;
+	payload TEXT := lower(TG_TABLE_NAME) || ' ' || left(TG_OP, 1);
+BEGIN
+	IF TG_OP <> 'TRUNCATE' THEN
+		source := CASE TG_OP WHEN 'INSERT' THEN 'new_rows' WHEN 'DELETE' THEN 'old_rows'
+			ELSE '(SELECT * FROM old_rows UNION ALL SELECT * FROM new_rows) AS R' END;
+		EXECUTE format('SELECT array_agg(DISTINCT K.k), count(*) FROM (SELECT (%s)::text AS k FROM %s LIMIT 201) AS K', TG_ARGV[0], source)
+		INTO keys, changed;
+		IF changed = 0 THEN
+			RETURN NULL;
+		END IF;
+		IF changed <= 200 THEN
+			payload := payload || E'\n' || array_to_string(keys, E'\n');
+		END IF;
+	END IF;
+	PERFORM pg_notify('mechanicshop_changes', payload);
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER Customer_insert_events AFTER INSERT ON Customer REFERENCING NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rtrim(lname)');
+CREATE TRIGGER Customer_update_events AFTER UPDATE ON Customer REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rtrim(lname)');
+CREATE TRIGGER Customer_delete_events AFTER DELETE ON Customer REFERENCING OLD TABLE AS old_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rtrim(lname)');
+CREATE TRIGGER Customer_truncate_events AFTER TRUNCATE ON Customer
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('');
+
+CREATE TRIGGER Car_insert_events AFTER INSERT ON Car REFERENCING NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('vin');
+CREATE TRIGGER Car_update_events AFTER UPDATE ON Car REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('vin');
+CREATE TRIGGER Car_delete_events AFTER DELETE ON Car REFERENCING OLD TABLE AS old_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('vin');
+CREATE TRIGGER Car_truncate_events AFTER TRUNCATE ON Car
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('');
+
+CREATE TRIGGER Owns_insert_events AFTER INSERT ON Owns REFERENCING NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('customer_id');
+CREATE TRIGGER Owns_update_events AFTER UPDATE ON Owns REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('customer_id');
+CREATE TRIGGER Owns_delete_events AFTER DELETE ON Owns REFERENCING OLD TABLE AS old_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('customer_id');
+CREATE TRIGGER Owns_truncate_events AFTER TRUNCATE ON Owns
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('');
+
+CREATE TRIGGER Service_Request_insert_events AFTER INSERT ON Service_Request REFERENCING NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rid');
+CREATE TRIGGER Service_Request_update_events AFTER UPDATE ON Service_Request REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rid');
+CREATE TRIGGER Service_Request_delete_events AFTER DELETE ON Service_Request REFERENCING OLD TABLE AS old_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rid');
+CREATE TRIGGER Service_Request_truncate_events AFTER TRUNCATE ON Service_Request
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('');
+
+CREATE TRIGGER Closed_Request_insert_events AFTER INSERT ON Closed_Request REFERENCING NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rid');
+CREATE TRIGGER Closed_Request_update_events AFTER UPDATE ON Closed_Request REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rid');
+CREATE TRIGGER Closed_Request_delete_events AFTER DELETE ON Closed_Request REFERENCING OLD TABLE AS old_rows
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('rid');
+CREATE TRIGGER Closed_Request_truncate_events AFTER TRUNCATE ON Closed_Request
+FOR EACH STATEMENT EXECUTE PROCEDURE notify_changes('');